@@ -15,11 +15,17 @@
  */
 package org.bananaforscale.cormac.dao;
 
+import com.mongodb.DBCollection;
 import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import org.bananaforscale.cormac.exception.datasource.NotFoundException;
+import org.bson.Document;
 
 /**
  * Base class for any DAO needing to use {@link MongoClient}.
@@ -27,12 +33,81 @@ import java.util.Set;
 public abstract class AbstractDataService {
 
     protected final MongoClient mongoClient;
+    protected final NamespaceCache namespaceCache;
+    protected DocumentCache documentCache;
+    protected ConcernPolicy concernPolicy = ConcernPolicy.parse(null);
 
     /**
      * @param mongoClient the {@link MongoClient} to use for communicating with MongoDB
      */
     public AbstractDataService(final MongoClient mongoClient) {
+        this(mongoClient, new NamespaceCache(0));
+    }
+
+    /**
+     * @param mongoClient the {@link MongoClient} to use for communicating with MongoDB
+     * @param namespaceCache the {@link NamespaceCache} shared with the other data services
+     */
+    public AbstractDataService(final MongoClient mongoClient, final NamespaceCache namespaceCache) {
         this.mongoClient = mongoClient;
+        this.namespaceCache = namespaceCache;
+    }
+
+    /**
+     * Sets the {@link DocumentCache} shared with the other data services. Documents are only
+     * cached once a cache is set.
+     *
+     * @param documentCache the cache, or {@code null} to disable caching
+     */
+    public void setDocumentCache(final DocumentCache documentCache) {
+        this.documentCache = documentCache;
+    }
+
+    /**
+     * Sets the default write concern and read preference of collections.
+     *
+     * @param concernPolicy the defaults, or {@code null} to use those of the client
+     */
+    public void setConcernPolicy(final ConcernPolicy concernPolicy) {
+        this.concernPolicy = concernPolicy == null ? ConcernPolicy.parse(null) : concernPolicy;
+    }
+
+    /**
+     * Returns a collection with the default settings of the collection applied, overridden by
+     * those of the request.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param concern the settings of the request
+     * @return the collection
+     */
+    protected MongoCollection<Document> getCollection(final String databaseName,
+            final String collectionName, final ConcernOptions concern) {
+        final MongoCollection<Document> collection =
+                mongoClient.getDatabase(databaseName).getCollection(collectionName);
+        final ConcernOptions options = concernPolicy.forNamespace(databaseName, collectionName)
+                .overrideWith(concern);
+        return options.isEmpty() ? collection : options.apply(collection);
+    }
+
+    /**
+     * Applies the default settings of a collection to a collection of the legacy API. These
+     * collections are shared by every request, so only the defaults can be applied to them.
+     *
+     * @param collection the collection
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection used to look up the defaults
+     */
+    protected void applyConcernDefaults(final DBCollection collection, final String databaseName,
+            final String collectionName) {
+        final ConcernOptions options = concernPolicy.forNamespace(databaseName, collectionName);
+        final WriteConcern writeConcern = options.getWriteConcern();
+        if (writeConcern != null) {
+            collection.setWriteConcern(writeConcern);
+        }
+        if (options.getReadPreference() != null) {
+            collection.setReadPreference(options.getReadPreference());
+        }
     }
 
     /**
@@ -41,11 +116,17 @@ public abstract class AbstractDataService {
      * @return a {@link Set} of database names
      */
     protected Set<String> getDatabaseNames() {
+        final Set<String> cached = namespaceCache.getDatabaseNames();
+        if (cached != null) {
+            return cached;
+        }
+        final long stamp = namespaceCache.stamp();
         final Set<String> dbSet = new HashSet<>();
         final MongoCursor<String> cursor = mongoClient.listDatabaseNames().iterator();
         while (cursor.hasNext()) {
             dbSet.add(cursor.next());
         }
+        namespaceCache.putDatabaseNames(dbSet, stamp);
         return dbSet;
     }
 
@@ -67,25 +148,83 @@ public abstract class AbstractDataService {
      * @return a {@link Set} of collection names
      */
     protected Set<String> getCollectionNames(final String databaseName) {
+        final Set<String> cached = namespaceCache.getCollectionNames(databaseName);
+        if (cached != null) {
+            return cached;
+        }
+        final long stamp = namespaceCache.stamp();
         final MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
         final Set<String> collectionSet = new HashSet<>();
         final MongoCursor<String> cursor = mongoDatabase.listCollectionNames().iterator();
         while (cursor.hasNext()) {
             collectionSet.add(cursor.next());
         }
+        namespaceCache.putCollectionNames(databaseName, collectionSet, stamp);
         return collectionSet;
     }
 
     /**
-     * Determines whether a collection with the specified name exists within a database.
+     * Determines whether a collection with the specified name exists within a database. Rather
+     * than listing every collection, the server is asked for the single collection by name so
+     * the cost does not grow with the number of collections in the database.
      *
      * @param databaseName the name of the database
      * @param collectionName the name of the collection to check for
      * @return {@code true} if the collection exists in the database, otherwise {@code false}
      */
     protected boolean collectionExists(final String databaseName, final String collectionName) {
-        final Set<String> collectionSet = getCollectionNames(databaseName);
-        return collectionSet.contains(collectionName);
+        final Boolean cached = namespaceCache.getCollectionExists(databaseName, collectionName);
+        if (cached != null) {
+            return cached;
+        }
+        final long stamp = namespaceCache.stamp();
+        final boolean exists = !findCollectionNames(databaseName, collectionName).isEmpty();
+        namespaceCache.putCollectionExists(databaseName, collectionName, exists, stamp);
+        return exists;
+    }
+
+    /**
+     * Looks up specific collections of a database using a server side filter on the name.
+     *
+     * @param databaseName the name of the database
+     * @param collectionNames the names of the collections to look up
+     * @return the {@link Set} of requested collection names that exist
+     */
+    protected Set<String> findCollectionNames(final String databaseName,
+            final String... collectionNames) {
+        final MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
+        final Document filter = collectionNames.length == 1
+                ? new Document("name", collectionNames[0])
+                : new Document("name", new Document("$in", Arrays.asList(collectionNames)));
+        final Set<String> found = new HashSet<>();
+        final MongoCursor<Document> cursor =
+                mongoDatabase.listCollections().filter(filter).iterator();
+        try {
+            while (cursor.hasNext()) {
+                found.add(cursor.next().getString("name"));
+            }
+        } finally {
+            cursor.close();
+        }
+        return found;
+    }
+
+    /**
+     * Verifies that a collection exists. The database is only looked up when the collection is
+     * missing, as an existing collection implies an existing database.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @throws NotFoundException if the database or collection doesn't exist
+     */
+    protected void requireCollection(final String databaseName, final String collectionName)
+            throws NotFoundException {
+        if (!collectionExists(databaseName, collectionName)) {
+            if (!databaseExists(databaseName)) {
+                throw new NotFoundException("The database doesn't exist in the datasource");
+            }
+            throw new NotFoundException("The collection doesn't exist in the datasource");
+        }
     }
 
     /**
@@ -133,8 +272,93 @@ public abstract class AbstractDataService {
      * @return {@code true} if the bucket exists, otherwise {@code false}
      */
     protected boolean bucketExists(final String databaseName, final String bucketName) {
-        final Set<String> bucketSet = getBucketNames(getCollectionNames(databaseName));
-        return bucketSet.contains(bucketName);
+        final String files = bucketName + ".files";
+        final String chunks = bucketName + ".chunks";
+        final Boolean filesCached = namespaceCache.getCollectionExists(databaseName, files);
+        final Boolean chunksCached = namespaceCache.getCollectionExists(databaseName, chunks);
+        if (filesCached != null && chunksCached != null) {
+            return filesCached && chunksCached;
+        }
+        final long stamp = namespaceCache.stamp();
+        final Set<String> found = findCollectionNames(databaseName, files, chunks);
+        namespaceCache.putCollectionExists(databaseName, files, found.contains(files), stamp);
+        namespaceCache.putCollectionExists(databaseName, chunks, found.contains(chunks), stamp);
+        return found.size() == 2;
+    }
+
+    /**
+     * Verifies that a bucket exists. The database is only looked up when the bucket is missing.
+     *
+     * @param databaseName the name of the database
+     * @param bucketName the name of the bucket
+     * @throws NotFoundException if the database or bucket doesn't exist
+     */
+    protected void requireBucket(final String databaseName, final String bucketName)
+            throws NotFoundException {
+        if (!bucketExists(databaseName, bucketName)) {
+            if (!databaseExists(databaseName)) {
+                throw new NotFoundException("The database doesn't exist in the datasource");
+            }
+            throw new NotFoundException("The bucket doesn't exist in the database");
+        }
+    }
+
+    /**
+     * Discards the cached names of a database after one of its namespaces has been created or
+     * removed.
+     *
+     * @param databaseName the name of the database that changed
+     */
+    protected void invalidateNamespaces(final String databaseName) {
+        namespaceCache.invalidate(databaseName);
+    }
+
+    /**
+     * Keeps the cached names consistent after an operation that may have implicitly created the
+     * database or collection.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection that now exists
+     */
+    protected void ensureNamespace(final String databaseName, final String collectionName) {
+        namespaceCache.ensureCollection(databaseName, collectionName);
+    }
+
+    /**
+     * Discards the cached documents of a database after it has been removed.
+     *
+     * @param databaseName the name of the database
+     */
+    protected void invalidateDocuments(final String databaseName) {
+        if (documentCache != null) {
+            documentCache.invalidate(databaseName);
+        }
+    }
+
+    /**
+     * Discards the cached documents of a collection after it has been removed or cleared.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     */
+    protected void invalidateDocuments(final String databaseName, final String collectionName) {
+        if (documentCache != null) {
+            documentCache.invalidate(databaseName, collectionName);
+        }
+    }
+
+    /**
+     * Discards a cached document after it has been changed or removed.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param documentId the document identifier
+     */
+    protected void invalidateDocument(final String databaseName, final String collectionName,
+            final String documentId) {
+        if (documentCache != null) {
+            documentCache.invalidate(databaseName, collectionName, documentId);
+        }
     }
 
 }
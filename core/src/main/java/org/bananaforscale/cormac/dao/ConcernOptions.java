@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * The durability and read settings of a request: the write concern given by {@code w},
+ * {@code j} and {@code wtimeout}, and the read preference. Settings that aren't given fall back
+ * to those of a less specific level, ending with the defaults of the client.
+ */
+public class ConcernOptions {
+
+    /**
+     * Options that change nothing.
+     */
+    public static final ConcernOptions NONE = new ConcernOptions(null, null, null, null);
+
+    /**
+     * The names of the read preferences without tag sets.
+     */
+    private static final String[] READ_PREFERENCES = {
+        "primary", "primaryPreferred", "secondary", "secondaryPreferred", "nearest"
+    };
+
+    private final String w;
+    private final Boolean j;
+    private final Integer wtimeout;
+    private final ReadPreference readPreference;
+
+    private ConcernOptions(final String w, final Boolean j, final Integer wtimeout,
+            final ReadPreference readPreference) {
+        this.w = w;
+        this.j = j;
+        this.wtimeout = wtimeout;
+        this.readPreference = readPreference;
+    }
+
+    /**
+     * Parses the settings given with a request. Each setting may be {@code null} when not given.
+     *
+     * @param w the number of members to acknowledge writes, {@code majority} or the name of a
+     * tag set
+     * @param j whether writes must be journaled before being acknowledged
+     * @param wtimeout the time in milliseconds to wait for the acknowledgement
+     * @param readPreference the name of a read preference such as {@code secondaryPreferred}
+     * @return the options
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    public static ConcernOptions parse(final String w, final String j, final String wtimeout,
+            final String readPreference) throws IllegalArgumentException {
+        String parsedW = null;
+        if (w != null && !w.trim().isEmpty()) {
+            parsedW = w.trim();
+            if (parsedW.startsWith("-")) {
+                throw new IllegalArgumentException("The w write concern can't be negative");
+            }
+        }
+        Boolean parsedJ = null;
+        if (j != null && !j.trim().isEmpty()) {
+            if (!"true".equalsIgnoreCase(j.trim()) && !"false".equalsIgnoreCase(j.trim())) {
+                throw new IllegalArgumentException("The j write concern must be true or false");
+            }
+            parsedJ = Boolean.valueOf(j.trim());
+        }
+        Integer parsedTimeout = null;
+        if (wtimeout != null && !wtimeout.trim().isEmpty()) {
+            if (!isNumber(wtimeout.trim())) {
+                throw new IllegalArgumentException("The wtimeout write concern must be a number of milliseconds");
+            }
+            parsedTimeout = Integer.valueOf(wtimeout.trim());
+        }
+        ReadPreference parsedPreference = null;
+        if (readPreference != null && !readPreference.trim().isEmpty()) {
+            for (final String name : READ_PREFERENCES) {
+                if (name.equalsIgnoreCase(readPreference.trim())) {
+                    parsedPreference = ReadPreference.valueOf(name);
+                }
+            }
+            if (parsedPreference == null) {
+                throw new IllegalArgumentException("The read preference must be one of primary, "
+                        + "primaryPreferred, secondary, secondaryPreferred or nearest");
+            }
+        }
+        return new ConcernOptions(parsedW, parsedJ, parsedTimeout, parsedPreference);
+    }
+
+    /**
+     * Parses settings in the form {@code w:majority,j:true,wtimeout:5000,readPreference:nearest}.
+     *
+     * @param value the settings, may be {@code null}
+     * @return the options
+     * @throws IllegalArgumentException if a setting is unknown or invalid
+     */
+    public static ConcernOptions parse(final String value) throws IllegalArgumentException {
+        String w = null;
+        String j = null;
+        String wtimeout = null;
+        String readPreference = null;
+        if (value != null) {
+            for (final String item : value.split(",")) {
+                if (item.trim().isEmpty()) {
+                    continue;
+                }
+                final int colon = item.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("The setting " + item.trim() + " has no value");
+                }
+                final String key = item.substring(0, colon).trim();
+                final String setting = item.substring(colon + 1).trim();
+                switch (key) {
+                    case "w":
+                        w = setting;
+                        break;
+                    case "j":
+                        j = setting;
+                        break;
+                    case "wtimeout":
+                        wtimeout = setting;
+                        break;
+                    case "readPreference":
+                        readPreference = setting;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("The setting " + key + " is unknown");
+                }
+            }
+        }
+        return parse(w, j, wtimeout, readPreference);
+    }
+
+    /**
+     * Combines these options with more specific ones, whose settings take precedence.
+     *
+     * @param override the more specific options
+     * @return the combined options
+     */
+    public ConcernOptions overrideWith(final ConcernOptions override) {
+        if (override == null || override.isEmpty()) {
+            return this;
+        }
+        return new ConcernOptions(override.w != null ? override.w : w,
+                override.j != null ? override.j : j,
+                override.wtimeout != null ? override.wtimeout : wtimeout,
+                override.readPreference != null ? override.readPreference : readPreference);
+    }
+
+    /**
+     * @return {@code true} if no setting is given, otherwise {@code false}
+     */
+    public boolean isEmpty() {
+        return w == null && j == null && wtimeout == null && readPreference == null;
+    }
+
+    /**
+     * Builds the write concern. Settings that aren't given take the values of an acknowledged
+     * write.
+     *
+     * @return the write concern, or {@code null} if no write setting is given
+     */
+    public WriteConcern getWriteConcern() {
+        if (w == null && j == null && wtimeout == null) {
+            return null;
+        }
+        final int timeout = wtimeout == null ? 0 : wtimeout;
+        final boolean journal = j != null && j;
+        if (w == null) {
+            return new WriteConcern(1, timeout, false, journal);
+        }
+        return isNumber(w) ? new WriteConcern(Integer.parseInt(w), timeout, false, journal)
+                : new WriteConcern(w, timeout, false, journal);
+    }
+
+    /**
+     * @return the read preference, or {@code null} if not given
+     */
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * Applies the options to a collection.
+     *
+     * @param <T> the type of the documents
+     * @param collection the collection
+     * @return the collection with the settings given applied
+     */
+    public <T> MongoCollection<T> apply(final MongoCollection<T> collection) {
+        MongoCollection<T> applied = collection;
+        final WriteConcern writeConcern = getWriteConcern();
+        if (writeConcern != null) {
+            applied = applied.withWriteConcern(writeConcern);
+        }
+        if (readPreference != null) {
+            applied = applied.withReadPreference(readPreference);
+        }
+        return applied;
+    }
+
+    private static boolean isNumber(final String value) {
+        if (value.isEmpty() || value.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcernOptions{" + "w=" + w + ", j=" + j + ", wtimeout=" + wtimeout
+                + ", readPreference=" + (readPreference == null ? null : readPreference.getName()) + '}';
+    }
+}
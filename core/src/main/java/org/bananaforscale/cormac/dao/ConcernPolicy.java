@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The default {@link ConcernOptions} of collections, given as a semicolon separated list of
+ * {@code namespace=settings} entries such as
+ * {@code orders.payments=w:majority,j:true; logs.*=w:0; *=wtimeout:10000}. As with
+ * {@link NamespaceFilter}, {@code database.*} applies to every collection of a database and
+ * {@code *} to every collection. The settings of the most specific entry win, falling back to the
+ * less specific entries for the settings it doesn't give.
+ */
+public class ConcernPolicy {
+
+    private final ConcernOptions all;
+    private final Map<String, ConcernOptions> databases;
+    private final Map<String, ConcernOptions> namespaces;
+
+    private ConcernPolicy(final ConcernOptions all, final Map<String, ConcernOptions> databases,
+            final Map<String, ConcernOptions> namespaces) {
+        this.all = all;
+        this.databases = databases;
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Parses the default settings of collections.
+     *
+     * @param value the entries, may be {@code null}
+     * @return the policy, with no defaults if the value is empty
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static ConcernPolicy parse(final String value) throws IllegalArgumentException {
+        ConcernOptions all = ConcernOptions.NONE;
+        final Map<String, ConcernOptions> databases = new HashMap<>();
+        final Map<String, ConcernOptions> namespaces = new HashMap<>();
+        if (value != null) {
+            for (final String item : value.split(";")) {
+                if (item.trim().isEmpty()) {
+                    continue;
+                }
+                final int equals = item.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("The entry " + item.trim() + " has no settings");
+                }
+                final String namespace = item.substring(0, equals).trim();
+                final ConcernOptions options = ConcernOptions.parse(item.substring(equals + 1));
+                if (namespace.equals("*")) {
+                    all = options;
+                } else if (namespace.endsWith(".*")) {
+                    databases.put(namespace.substring(0, namespace.length() - 2), options);
+                } else {
+                    namespaces.put(namespace, options);
+                }
+            }
+        }
+        return new ConcernPolicy(all, databases, namespaces);
+    }
+
+    /**
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @return the default settings of the collection
+     */
+    public ConcernOptions forNamespace(final String databaseName, final String collectionName) {
+        return all.overrideWith(databases.get(databaseName))
+                .overrideWith(namespaces.get(databaseName + "." + collectionName));
+    }
+
+    /**
+     * @return {@code true} if no collection has default settings, otherwise {@code false}
+     */
+    public boolean isEmpty() {
+        return all.isEmpty() && databases.isEmpty() && namespaces.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcernPolicy{" + "all=" + all + ", databases=" + databases
+                + ", namespaces=" + namespaces + '}';
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of serialized documents keyed by database, collection, and document
+ * identifier. The capacity is given in bytes of cached JSON rather than in entries, so wide
+ * documents can't push the heap usage beyond the configured bound.
+ * <p>
+ * Entries are evicted using a segmented LRU policy: a new entry enters a probation segment and is
+ * promoted to a protected segment when it is read again. Entries evicted first come from the
+ * probation segment, so a scan over many documents read only once can't flush the hot set. The
+ * cache is split into independently locked stripes to reduce contention. Documents larger than
+ * the share of the capacity of a single stripe are not cached.
+ * <p>
+ * Readers fetching a missing document obtain a stamp with {@link #stamp(String, String, String)}
+ * before going to the datasource and pass it to {@link #put(String, String, String, String, long)}.
+ * A value is discarded if its stripe was invalidated in the meantime, so a concurrent write can't
+ * be overwritten by the stale document read before it.
+ */
+public class DocumentCache {
+
+    private static final int STRIPES = 16;
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final long maxBytes;
+    private final NamespaceFilter filter;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes the approximate maximum number of bytes held by the cache
+     * @param filter selects the collections whose documents are cached
+     */
+    public DocumentCache(final long maxBytes, final NamespaceFilter filter) {
+        this.maxBytes = maxBytes;
+        this.filter = filter;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxBytes / STRIPES);
+        }
+    }
+
+    /**
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @return {@code true} if documents of the collection are cached, otherwise {@code false}
+     */
+    public boolean isCached(final String databaseName, final String collectionName) {
+        return maxBytes > 0 && filter.matches(databaseName, collectionName);
+    }
+
+    /**
+     * Returns a cached document.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param documentId the document identifier
+     * @return the document, or {@code null} if it isn't cached
+     */
+    public String get(final String databaseName, final String collectionName,
+            final String documentId) {
+        final String key = key(databaseName, collectionName, documentId);
+        final String value = stripeFor(key).get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the stamp to pass to {@link #put(String, String, String, String, long)} once the
+     * document has been read from the datasource.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param documentId the document identifier
+     * @return the stamp
+     */
+    public long stamp(final String databaseName, final String collectionName,
+            final String documentId) {
+        return stripeFor(key(databaseName, collectionName, documentId)).stamp();
+    }
+
+    /**
+     * Caches a document unless the cache was invalidated since the stamp was taken.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param documentId the document identifier
+     * @param document the document as JSON
+     * @param stamp the stamp taken before the document was read
+     */
+    public void put(final String databaseName, final String collectionName,
+            final String documentId, final String document, final long stamp) {
+        if (!isCached(databaseName, collectionName)) {
+            return;
+        }
+        final String key = key(databaseName, collectionName, documentId);
+        stripeFor(key).put(key, document, stamp);
+    }
+
+    /**
+     * Discards a cached document.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param documentId the document identifier
+     */
+    public void invalidate(final String databaseName, final String collectionName,
+            final String documentId) {
+        final String key = key(databaseName, collectionName, documentId);
+        stripeFor(key).remove(key);
+    }
+
+    /**
+     * Discards the cached documents of a collection.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     */
+    public void invalidate(final String databaseName, final String collectionName) {
+        removePrefix(databaseName + '\u0000' + collectionName + '\u0000');
+    }
+
+    /**
+     * Discards the cached documents of every collection of a database.
+     *
+     * @param databaseName the name of the database
+     */
+    public void invalidate(final String databaseName) {
+        removePrefix(databaseName + '\u0000');
+    }
+
+    /**
+     * Discards every cached document.
+     */
+    public void invalidateAll() {
+        removePrefix("");
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to go to the datasource
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, {@code 0} if there were none
+     */
+    public double getHitRatio() {
+        final long hitCount = hits.get();
+        final long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return the number of documents evicted to stay within the size bound
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the approximate number of bytes currently held
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        for (final Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public int getEntryCount() {
+        int count = 0;
+        for (final Stripe stripe : stripes) {
+            count += stripe.count();
+        }
+        return count;
+    }
+
+    /**
+     * @return the approximate maximum number of bytes held by the cache
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void removePrefix(final String prefix) {
+        for (final Stripe stripe : stripes) {
+            stripe.removePrefix(prefix);
+        }
+    }
+
+    private Stripe stripeFor(final String key) {
+        final int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static String key(final String databaseName, final String collectionName,
+            final String documentId) {
+        return databaseName + '\u0000' + collectionName + '\u0000' + documentId;
+    }
+
+    private static long weigh(final String key, final String value) {
+        return 2L * (key.length() + value.length()) + ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentCache{" + "maxBytes=" + maxBytes + ", filter=" + filter
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+
+    /**
+     * A segmented LRU guarded by its own lock. Both segments are access ordered so that the
+     * eldest entry is the least recently used one.
+     */
+    private final class Stripe {
+
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<String, String> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, String> protectedSegment =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+        private long generation;
+
+        private Stripe(final long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+        }
+
+        private synchronized String get(final String key) {
+            final String value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            final String candidate = probation.remove(key);
+            if (candidate == null) {
+                return null;
+            }
+            final long weight = weigh(key, candidate);
+            probationBytes -= weight;
+            protectedSegment.put(key, candidate);
+            protectedBytes += weight;
+            demote();
+            return candidate;
+        }
+
+        private synchronized long stamp() {
+            return generation;
+        }
+
+        private synchronized void put(final String key, final String value, final long stamp) {
+            if (stamp != generation) {
+                return;
+            }
+            final long weight = weigh(key, value);
+            removeKey(key);
+            if (weight > capacity) {
+                return;
+            }
+            probation.put(key, value);
+            probationBytes += weight;
+            while (probationBytes + protectedBytes > capacity) {
+                if (!evictEldest(probation, true) && !evictEldest(protectedSegment, false)) {
+                    break;
+                }
+            }
+        }
+
+        private synchronized void remove(final String key) {
+            generation++;
+            removeKey(key);
+        }
+
+        private synchronized void removePrefix(final String prefix) {
+            generation++;
+            removePrefix(probation, prefix, true);
+            removePrefix(protectedSegment, prefix, false);
+        }
+
+        private synchronized long size() {
+            return probationBytes + protectedBytes;
+        }
+
+        private synchronized int count() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private void removeKey(final String key) {
+            String previous = probation.remove(key);
+            if (previous != null) {
+                probationBytes -= weigh(key, previous);
+            }
+            previous = protectedSegment.remove(key);
+            if (previous != null) {
+                protectedBytes -= weigh(key, previous);
+            }
+        }
+
+        private void removePrefix(final Map<String, String> segment, final String prefix,
+                final boolean isProbation) {
+            final Iterator<Map.Entry<String, String>> it = segment.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, String> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    final long weight = weigh(entry.getKey(), entry.getValue());
+                    if (isProbation) {
+                        probationBytes -= weight;
+                    } else {
+                        protectedBytes -= weight;
+                    }
+                    it.remove();
+                }
+            }
+        }
+
+        /**
+         * Moves the least recently used protected entries back to probation once the protected
+         * segment outgrows its share of the capacity.
+         */
+        private void demote() {
+            while (protectedBytes > protectedCapacity && !protectedSegment.isEmpty()) {
+                final Map.Entry<String, String> eldest =
+                        protectedSegment.entrySet().iterator().next();
+                final long weight = weigh(eldest.getKey(), eldest.getValue());
+                protectedSegment.remove(eldest.getKey());
+                protectedBytes -= weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationBytes += weight;
+            }
+        }
+
+        private boolean evictEldest(final LinkedHashMap<String, String> segment,
+                final boolean isProbation) {
+            if (segment.isEmpty()) {
+                return false;
+            }
+            final Map.Entry<String, String> eldest = segment.entrySet().iterator().next();
+            final long weight = weigh(eldest.getKey(), eldest.getValue());
+            segment.remove(eldest.getKey());
+            if (isProbation) {
+                probationBytes -= weight;
+            } else {
+                protectedBytes -= weight;
+            }
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches database and collection names for the existence checks performed by
+ * {@link AbstractDataService}. Entries expire after a fixed time to live so that namespaces
+ * created or dropped outside of this process are eventually picked up. A single instance is
+ * meant to be shared by all data services using the same MongoDB connection so that changes
+ * made through one service invalidate the names seen by the others.
+ * <p>
+ * Readers take a stamp with {@link #stamp()} before listing names on the server and pass it
+ * along when caching them, so that names listed before a concurrent invalidation are discarded
+ * rather than cached for the whole time to live.
+ */
+public class NamespaceCache {
+
+    private final long ttlMillis;
+    private final ConcurrentMap<String, Entry> collectionNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Flag>> collectionFlags =
+            new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile Entry databaseNames;
+    private long generation;
+
+    /**
+     * @param ttlMillis the time in milliseconds an entry stays valid, {@code 0} or less disables
+     * caching
+     */
+    public NamespaceCache(final long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return {@code true} if entries are retained, otherwise {@code false}
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * @return the time in milliseconds an entry stays valid
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Returns the stamp to pass to the put methods once the names are listed. The stamp changes
+     * whenever names are invalidated.
+     *
+     * @return the stamp
+     */
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    /**
+     * Returns the cached database names.
+     *
+     * @return the database names, or {@code null} if they are not cached or have expired
+     */
+    public Set<String> getDatabaseNames() {
+        return read(databaseNames);
+    }
+
+    /**
+     * Caches the database names.
+     *
+     * @param names the database names present on the server
+     * @param stamp the stamp taken before the names were listed
+     */
+    public synchronized void putDatabaseNames(final Set<String> names, final long stamp) {
+        if (isEnabled() && stamp == generation) {
+            databaseNames = new Entry(names, System.currentTimeMillis() + ttlMillis);
+        }
+    }
+
+    /**
+     * Returns the cached collection names of a database.
+     *
+     * @param databaseName the name of the database
+     * @return the collection names, or {@code null} if they are not cached or have expired
+     */
+    public Set<String> getCollectionNames(final String databaseName) {
+        return read(collectionNames.get(databaseName));
+    }
+
+    /**
+     * Caches the collection names of a database.
+     *
+     * @param databaseName the name of the database
+     * @param names the collection names present in the database
+     * @param stamp the stamp taken before the names were listed
+     */
+    public synchronized void putCollectionNames(final String databaseName, final Set<String> names,
+            final long stamp) {
+        if (isEnabled() && stamp == generation) {
+            collectionNames.put(databaseName,
+                    new Entry(names, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Determines from the cache whether a single collection exists. A cached listing of the
+     * database takes precedence over results of earlier single collection lookups.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @return whether the collection exists, or {@code null} if this is not known
+     */
+    public Boolean getCollectionExists(final String databaseName, final String collectionName) {
+        final long now = System.currentTimeMillis();
+        final Entry listing = collectionNames.get(databaseName);
+        if (listing != null && listing.expiresAt >= now) {
+            hits.incrementAndGet();
+            return listing.names.contains(collectionName);
+        }
+        final ConcurrentMap<String, Flag> flags = collectionFlags.get(databaseName);
+        final Flag flag = flags == null ? null : flags.get(collectionName);
+        if (flag == null || flag.expiresAt < now) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return flag.exists;
+    }
+
+    /**
+     * Caches the result of a single collection lookup.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param exists whether the collection exists
+     * @param stamp the stamp taken before the collection was looked up
+     */
+    public synchronized void putCollectionExists(final String databaseName, final String collectionName,
+            final boolean exists, final long stamp) {
+        if (!isEnabled() || stamp != generation) {
+            return;
+        }
+        ConcurrentMap<String, Flag> flags = collectionFlags.get(databaseName);
+        if (flags == null) {
+            final ConcurrentMap<String, Flag> created = new ConcurrentHashMap<>();
+            flags = collectionFlags.putIfAbsent(databaseName, created);
+            if (flags == null) {
+                flags = created;
+            }
+        }
+        flags.put(collectionName, new Flag(exists, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Discards the database names and the collection names of the specified database. Used
+     * whenever a database, collection, or bucket is created or removed.
+     *
+     * @param databaseName the name of the database that changed
+     */
+    public synchronized void invalidate(final String databaseName) {
+        generation++;
+        databaseNames = null;
+        collectionNames.remove(databaseName);
+        collectionFlags.remove(databaseName);
+    }
+
+    /**
+     * Discards the cached names of a database unless they already include the collection. Used
+     * after operations that implicitly create a database or collection on first use. The stamp
+     * changes either way, so that names listed before the collection was created aren't cached.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection that now exists
+     */
+    public synchronized void ensureCollection(final String databaseName, final String collectionName) {
+        generation++;
+        final Entry databases = databaseNames;
+        final Entry collections = collectionNames.get(databaseName);
+        final ConcurrentMap<String, Flag> flags = collectionFlags.get(databaseName);
+        final Flag flag = flags == null ? null : flags.get(collectionName);
+        if ((databases != null && !databases.names.contains(databaseName))
+                || (collections != null && !collections.names.contains(collectionName))
+                || (flag != null && !flag.exists)) {
+            invalidate(databaseName);
+        }
+    }
+
+    /**
+     * Discards every cached name.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        databaseNames = null;
+        collectionNames.clear();
+        collectionFlags.clear();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to go to the server
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private Set<String> read(final Entry entry) {
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.names;
+    }
+
+    @Override
+    public String toString() {
+        return "NamespaceCache{" + "ttlMillis=" + ttlMillis + ", hits=" + hits
+                + ", misses=" + misses + '}';
+    }
+
+    /**
+     * An immutable set of names with its expiry time.
+     */
+    private static final class Entry {
+
+        private final Set<String> names;
+        private final long expiresAt;
+
+        private Entry(final Set<String> names, final long expiresAt) {
+            this.names = Collections.unmodifiableSet(new HashSet<>(names));
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The result of a single collection lookup with its expiry time.
+     */
+    private static final class Flag {
+
+        private final boolean exists;
+        private final long expiresAt;
+
+        private Flag(final boolean exists, final long expiresAt) {
+            this.exists = exists;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
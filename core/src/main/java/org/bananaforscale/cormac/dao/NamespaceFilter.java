@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects the collections a feature is enabled for. The filter is given as a comma separated list
+ * of namespaces in the form {@code database.collection}, where {@code database.*} selects every
+ * collection of a database and {@code *} selects every collection.
+ */
+public class NamespaceFilter {
+
+    private static final NamespaceFilter NONE = new NamespaceFilter(false,
+            Collections.<String>emptySet(), Collections.<String>emptySet());
+
+    private final boolean all;
+    private final Set<String> databases;
+    private final Set<String> namespaces;
+
+    private NamespaceFilter(final boolean all, final Set<String> databases,
+            final Set<String> namespaces) {
+        this.all = all;
+        this.databases = databases;
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Parses a comma separated list of namespaces.
+     *
+     * @param value the namespaces, may be {@code null}
+     * @return the filter, matching nothing if the value is empty
+     */
+    public static NamespaceFilter parse(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        boolean all = false;
+        final Set<String> databases = new HashSet<>();
+        final Set<String> namespaces = new HashSet<>();
+        for (final String item : value.split(",")) {
+            final String namespace = item.trim();
+            if (namespace.equals("*")) {
+                all = true;
+            } else if (namespace.endsWith(".*")) {
+                databases.add(namespace.substring(0, namespace.length() - 2));
+            } else if (!namespace.isEmpty()) {
+                namespaces.add(namespace);
+            }
+        }
+        return new NamespaceFilter(all, databases, namespaces);
+    }
+
+    /**
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @return {@code true} if the collection is selected, otherwise {@code false}
+     */
+    public boolean matches(final String databaseName, final String collectionName) {
+        return all || databases.contains(databaseName)
+                || namespaces.contains(databaseName + "." + collectionName);
+    }
+
+    /**
+     * @return {@code true} if no collection can match, otherwise {@code false}
+     */
+    public boolean isEmpty() {
+        return !all && databases.isEmpty() && namespaces.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "NamespaceFilter{" + "all=" + all + ", databases=" + databases
+                + ", namespaces=" + namespaces + '}';
+    }
+}
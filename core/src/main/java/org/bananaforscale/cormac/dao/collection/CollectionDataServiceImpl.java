@@ -17,6 +17,7 @@ package org.bananaforscale.cormac.dao.collection;
 
 import com.mongodb.MongoClient;
 import org.bananaforscale.cormac.dao.AbstractDataService;
+import org.bananaforscale.cormac.dao.NamespaceCache;
 import com.mongodb.MongoException;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.CreateCollectionOptions;
@@ -40,6 +41,10 @@ public class CollectionDataServiceImpl extends AbstractDataService implements Co
         super(mongoClient);
     }
 
+    public CollectionDataServiceImpl(MongoClient mongoClient, NamespaceCache namespaceCache) {
+        super(mongoClient, namespaceCache);
+    }
+
     /**
      * Returns the names of all collections in this database.
      *
@@ -89,6 +94,7 @@ public class CollectionDataServiceImpl extends AbstractDataService implements Co
             CreateCollectionOptions options = new CreateCollectionOptions();
             options.capped(false);
             mongoDatabase.createCollection(collectionName, options);
+            invalidateNamespaces(databaseName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while adding the collection", ex);
@@ -109,14 +115,11 @@ public class CollectionDataServiceImpl extends AbstractDataService implements Co
     public boolean removeCollection(String databaseName, String collectionName)
             throws DatasourceException, NotFoundException {
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
-            }
-            if (!collectionExists(databaseName, collectionName)) {
-                throw new NotFoundException("The collection doesn't exist in the datasource");
-            }
+            requireCollection(databaseName, collectionName);
             MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
             mongoDatabase.getCollection(collectionName).drop();
+            invalidateNamespaces(databaseName);
+            invalidateDocuments(databaseName, collectionName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while deleting the collection", ex);
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import org.bananaforscale.cormac.dao.AbstractDataService;
+import org.bananaforscale.cormac.dao.NamespaceCache;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.ExistsException;
 import org.bananaforscale.cormac.exception.datasource.NotFoundException;
@@ -43,6 +44,10 @@ public class DatabaseDataServiceImpl extends AbstractDataService implements Data
         super(mongoClient);
     }
 
+    public DatabaseDataServiceImpl(final MongoClient mongoClient, final NamespaceCache namespaceCache) {
+        super(mongoClient, namespaceCache);
+    }
+
     /**
      * Returns a list of all database names present on the server.
      *
@@ -105,6 +110,7 @@ public class DatabaseDataServiceImpl extends AbstractDataService implements Data
             String collectionName = "temp" + UUID.randomUUID();
             mongoDatabase.createCollection(collectionName);
             mongoDatabase.getCollection(collectionName).drop();
+            invalidateNamespaces(databaseName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while adding the database", ex);
@@ -127,6 +133,8 @@ public class DatabaseDataServiceImpl extends AbstractDataService implements Data
                 throw new NotFoundException("The database doesn't exist in the datasource");
             }
             mongoClient.getDatabase(databaseName).drop();
+            invalidateNamespaces(databaseName);
+            invalidateDocuments(databaseName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while removing the database", ex);
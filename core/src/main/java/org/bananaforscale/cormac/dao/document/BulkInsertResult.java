@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Encapsulates the result of inserting several documents: the identifier of each document in the
+ * order they were submitted, {@code null} where a document wasn't inserted, and the reason each
+ * rejected document failed keyed by its position. In ordered mode the documents following the
+ * first failure are neither inserted nor listed as errors.
+ */
+public class BulkInsertResult {
+
+    private final List<String> ids;
+    private final SortedMap<Integer, String> errors;
+
+    public BulkInsertResult(final List<String> ids, final SortedMap<Integer, String> errors) {
+        this.ids = Collections.unmodifiableList(ids);
+        this.errors = Collections.unmodifiableSortedMap(errors);
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public SortedMap<Integer, String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of documents inserted
+     */
+    public int getInsertedCount() {
+        int count = 0;
+        for (final String id : ids) {
+            if (id != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkInsertResult{" + "submitted=" + ids.size()
+                + ", inserted=" + getInsertedCount() + ", errors=" + errors.size() + '}';
+    }
+
+}
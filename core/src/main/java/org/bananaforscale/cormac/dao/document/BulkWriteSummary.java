@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encapsulates the outcome of a bulk write: the totals reported by the server and the outcome of
+ * each operation in the order they were submitted. The totals are only known when the write was
+ * acknowledged. Operations reported as applied may not be replicated as requested when the write
+ * concern failed.
+ */
+public class BulkWriteSummary {
+
+    private final boolean acknowledged;
+    private final int inserted;
+    private final int matched;
+    private final Integer modified;
+    private final int deleted;
+    private final int upserted;
+    private final List<OperationResult> operations;
+    private final String writeConcernError;
+
+    /**
+     * @param acknowledged whether the server acknowledged the write
+     * @param inserted the number of documents inserted
+     * @param matched the number of documents matched by updates and replacements
+     * @param modified the number of documents modified, or {@code null} if the server doesn't
+     * report it
+     * @param deleted the number of documents deleted
+     * @param upserted the number of documents upserted
+     * @param operations the outcome of each operation
+     * @param writeConcernError the reason the write concern couldn't be satisfied, or
+     * {@code null} if it was
+     */
+    public BulkWriteSummary(final boolean acknowledged, final int inserted, final int matched,
+            final Integer modified, final int deleted, final int upserted,
+            final List<OperationResult> operations, final String writeConcernError) {
+        this.acknowledged = acknowledged;
+        this.inserted = inserted;
+        this.matched = matched;
+        this.modified = modified;
+        this.deleted = deleted;
+        this.upserted = upserted;
+        this.operations = Collections.unmodifiableList(operations);
+        this.writeConcernError = writeConcernError;
+    }
+
+    public boolean isAcknowledged() {
+        return acknowledged;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getMatched() {
+        return matched;
+    }
+
+    public Integer getModified() {
+        return modified;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public int getUpserted() {
+        return upserted;
+    }
+
+    public List<OperationResult> getOperations() {
+        return operations;
+    }
+
+    public String getWriteConcernError() {
+        return writeConcernError;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkWriteSummary{" + "inserted=" + inserted + ", matched=" + matched
+                + ", modified=" + modified + ", deleted=" + deleted + ", upserted=" + upserted
+                + ", operations=" + operations.size() + ", writeConcernError=" + writeConcernError + '}';
+    }
+
+    /**
+     * The outcome of a single operation of a bulk write.
+     */
+    public static class OperationResult {
+
+        /**
+         * The operation was applied.
+         */
+        public static final String OK = "ok";
+        /**
+         * The server refused the operation.
+         */
+        public static final String ERROR = "error";
+        /**
+         * The operation wasn't attempted as an earlier operation of an ordered write failed.
+         */
+        public static final String SKIPPED = "skipped";
+
+        private final String type;
+        private final String status;
+        private final String id;
+        private final String error;
+
+        /**
+         * @param type the operation, such as "insertOne" or "deleteMany"
+         * @param status one of {@link #OK}, {@link #ERROR} or {@link #SKIPPED}
+         * @param id the identifier of the document inserted or upserted, if any
+         * @param error the reason the server refused the operation, if it did
+         */
+        public OperationResult(final String type, final String status, final String id,
+                final String error) {
+            this.type = type;
+            this.status = status;
+            this.id = id;
+            this.error = error;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "OperationResult{" + "type=" + type + ", status=" + status + ", id=" + id + '}';
+        }
+    }
+
+}
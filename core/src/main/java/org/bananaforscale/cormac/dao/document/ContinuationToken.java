@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+/**
+ * The position of the last document of a page used for keyset pagination. Rather than skipping
+ * over the documents of earlier pages the next page is selected with a range predicate on the
+ * sort key, which the server can answer from an index regardless of how deep the page is.
+ * Documents are always ordered by {@code _id} as well so that equal sort values have a stable
+ * order. As MongoDB range operators only match values of the same type, the predicate also
+ * selects the values of the types that sort after the last value, with documents missing the
+ * sort field sorting first like {@code null}.
+ */
+public class ContinuationToken {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The BSON type numbers in the order MongoDB sorts values of different types, values of the
+     * types of one group being compared with each other.
+     */
+    private static final int[][] TYPE_ORDER = {
+        {1, 16, 18}, // numbers
+        {2, 14}, // strings and symbols
+        {3}, // documents
+        {4}, // arrays
+        {5}, // binary data
+        {7}, // object ids
+        {8}, // booleans
+        {9}, // dates
+        {17}, // timestamps
+        {11} // regular expressions
+    };
+
+    private final String sortField;
+    private final int direction;
+    private final Object lastValue;
+    private final Object lastId;
+
+    /**
+     * @param sortField the field the documents are ordered by, or {@code null} to order by
+     * {@code _id} only
+     * @param direction {@code 1} for ascending or {@code -1} for descending order
+     * @param lastValue the sort field value of the last document of the page
+     * @param lastId the identifier of the last document of the page
+     */
+    public ContinuationToken(final String sortField, final int direction, final Object lastValue,
+            final Object lastId) {
+        this.sortField = sortField;
+        this.direction = direction;
+        this.lastValue = lastValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Creates the token for the position after a document.
+     *
+     * @param sortField the field the documents are ordered by, or {@code null} to order by
+     * {@code _id} only
+     * @param direction {@code 1} for ascending or {@code -1} for descending order
+     * @param document the last document of the page, including its {@code _id}
+     * @return the token
+     */
+    public static ContinuationToken after(final String sortField, final int direction,
+            final Document document) {
+        final Object value = sortField == null ? null : getPath(document, sortField);
+        return new ContinuationToken(sortField, direction, value, document.get("_id"));
+    }
+
+    /**
+     * Builds the sort specification used for keyset pagination.
+     *
+     * @param sortField the field the documents are ordered by, or {@code null} to order by
+     * {@code _id} only
+     * @param direction {@code 1} for ascending or {@code -1} for descending order
+     * @return the sort specification
+     */
+    public static Document sort(final String sortField, final int direction) {
+        if (sortField == null) {
+            return new Document("_id", direction);
+        }
+        return new Document(sortField, direction).append("_id", direction);
+    }
+
+    /**
+     * Builds the predicate selecting the documents after this position.
+     *
+     * @return the range predicate
+     */
+    public Document toFilter() {
+        final String operator = direction < 0 ? "$lt" : "$gt";
+        final Document idRange = new Document("_id", new Document(operator, lastId));
+        if (sortField == null) {
+            return idRange;
+        }
+        final List<Document> clauses = new ArrayList<>();
+        if (lastValue == null) {
+            if (direction >= 0) {
+                clauses.add(new Document(sortField, new Document("$ne", null)));
+            }
+        } else {
+            clauses.add(new Document(sortField, new Document(operator, lastValue)));
+            final int rank = typeRank(lastValue);
+            if (rank >= 0) {
+                final int from = direction < 0 ? 0 : rank + 1;
+                final int to = direction < 0 ? rank : TYPE_ORDER.length;
+                for (int i = from; i < to; i++) {
+                    for (final int type : TYPE_ORDER[i]) {
+                        clauses.add(new Document(sortField, new Document("$type", type)));
+                    }
+                }
+            }
+            if (direction < 0) {
+                clauses.add(new Document(sortField, null));
+            }
+        }
+        // the value comes from the client, so a document value must not be read as operators
+        clauses.add(new Document(sortField, new Document("$eq", lastValue))
+                .append("_id", new Document(operator, lastId)));
+        return new Document("$or", clauses);
+    }
+
+    /**
+     * Finds the position of the type of a value in the sort order of types.
+     *
+     * @param value the value
+     * @return the index in {@link #TYPE_ORDER}, or -1 for a type outside of it
+     */
+    private static int typeRank(final Object value) {
+        if (value instanceof Number) {
+            return 0;
+        } else if (value instanceof String) {
+            return 1;
+        } else if (value instanceof Map) {
+            return 2;
+        } else if (value instanceof List) {
+            return 3;
+        } else if (value instanceof Binary || value instanceof byte[]) {
+            return 4;
+        } else if (value instanceof ObjectId) {
+            return 5;
+        } else if (value instanceof Boolean) {
+            return 6;
+        } else if (value instanceof Date) {
+            return 7;
+        } else if (value instanceof BsonTimestamp) {
+            return 8;
+        } else if (value instanceof Pattern || value instanceof BsonRegularExpression) {
+            return 9;
+        }
+        return -1;
+    }
+
+    /**
+     * Verifies the token was issued for the same ordering as the current request.
+     *
+     * @param requestedField the requested sort field, or {@code null} for {@code _id} order
+     * @param requestedDirection the requested direction
+     * @throws IllegalArgumentException if the ordering differs
+     */
+    public void verifyOrder(final String requestedField, final int requestedDirection)
+            throws IllegalArgumentException {
+        final boolean sameField = sortField == null
+                ? requestedField == null : sortField.equals(requestedField);
+        if (!sameField || direction != requestedDirection) {
+            throw new IllegalArgumentException(
+                    "The continuation token doesn't match the requested order");
+        }
+    }
+
+    /**
+     * Encodes the token as an opaque URL safe string.
+     *
+     * @return the encoded token
+     */
+    public String encode() {
+        final Document document = new Document("f", sortField).append("d", direction)
+                .append("v", lastValue).append("i", lastId);
+        final byte[] bytes = document.toJson().getBytes(StandardCharsets.UTF_8);
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     *
+     * @param token the encoded token
+     * @return the token
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ContinuationToken decode(final String token) throws IllegalArgumentException {
+        if (token == null || token.isEmpty() || token.length() % 2 != 0) {
+            throw new IllegalArgumentException("The continuation token is invalid");
+        }
+        try {
+            final byte[] bytes = new byte[token.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Integer.parseInt(token.substring(i * 2, i * 2 + 2), 16);
+            }
+            final Document document = Document.parse(new String(bytes, StandardCharsets.UTF_8));
+            final Object direction = document.get("d");
+            if (!document.containsKey("i") || !(direction instanceof Integer)) {
+                throw new IllegalArgumentException("The continuation token is invalid");
+            }
+            return new ContinuationToken(document.getString("f"), (Integer) direction,
+                    document.get("v"), document.get("i"));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("The continuation token is invalid", ex);
+        }
+    }
+
+    /**
+     * Resolves a dotted path within a document.
+     *
+     * @param document the document
+     * @param path the dotted field path
+     * @return the value, or {@code null} if the path doesn't exist
+     */
+    static Object getPath(final Document document, final String path) {
+        Object current = document;
+        for (final String part : path.split("\\.")) {
+            if (!(current instanceof Document)) {
+                return null;
+            }
+            current = ((Document) current).get(part);
+        }
+        return current;
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public Object getLastValue() {
+        return lastValue;
+    }
+
+    public Object getLastId() {
+        return lastId;
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuationToken{" + "sortField=" + sortField + ", direction=" + direction
+                + ", lastValue=" + lastValue + ", lastId=" + lastId + '}';
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.List;
+
+/**
+ * Encapsulates the result of looking up several documents by identifier: the documents found, in
+ * the order they were requested, and the identifiers that matched no document.
+ */
+public class DocumentBatch {
+
+    private final List<String> documents;
+    private final List<String> missing;
+
+    public DocumentBatch(final List<String> documents, final List<String> missing) {
+        this.documents = documents;
+        this.missing = missing;
+    }
+
+    public List<String> getDocuments() {
+        return documents;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentBatch{" + "documents=" + documents.size()
+                + ", missing=" + missing.size() + '}';
+    }
+
+}
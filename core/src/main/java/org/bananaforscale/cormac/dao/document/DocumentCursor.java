@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A forward only cursor over documents serialized as JSON. The cursor holds server resources
+ * and must be closed once consumed.
+ */
+public interface DocumentCursor extends Closeable {
+
+    /**
+     * @return {@code true} if another document is available, otherwise {@code false}
+     */
+    boolean hasNext();
+
+    /**
+     * @return the next document as JSON
+     */
+    String next();
+
+    /**
+     * Writes the next document as JSON, avoiding an intermediate string where the
+     * implementation allows it.
+     *
+     * @param writer the writer receiving the document
+     * @throws IOException if the writer fails
+     */
+    void writeNext(Writer writer) throws IOException;
+
+    /**
+     * Releases the server side cursor.
+     */
+    @Override
+    void close();
+}
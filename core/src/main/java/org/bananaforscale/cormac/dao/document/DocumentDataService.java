@@ -16,8 +16,10 @@
 package org.bananaforscale.cormac.dao.document;
 
 import java.util.List;
+import org.bananaforscale.cormac.dao.ConcernOptions;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.NotFoundException;
+import org.bananaforscale.cormac.exception.datasource.QueueFullException;
 import org.bananaforscale.cormac.exception.serialization.DeserializeException;
 
 /**
@@ -26,18 +28,56 @@ import org.bananaforscale.cormac.exception.serialization.DeserializeException;
  */
 public interface DocumentDataService {
 
+    public DocumentDataService withConcern(ConcernOptions concern);
+
     public List<String> getAll(String databaseName, String collectionName, String query, String fields, String skip, String limit, String orderBy, boolean includeId)
             throws DatasourceException, NotFoundException;
 
+    DocumentCursor openAll(String databaseName, String collectionName, String query, String fields, String skip, String limit, String orderBy, boolean includeId)
+            throws DatasourceException, IllegalArgumentException, NotFoundException;
+
+    DocumentPage getPage(String databaseName, String collectionName, String query, String fields, String limit, String orderBy, boolean includeId, String continuationToken)
+            throws DatasourceException, IllegalArgumentException, NotFoundException;
+
     String getById(String databaseName, String collectionName, String documentId)
             throws DatasourceException, NotFoundException;
 
+    DocumentBatch getByIds(String databaseName, String collectionName, List<String> documentIds)
+            throws DatasourceException, IllegalArgumentException, NotFoundException;
+
     String add(String databaseName, String collectionName, String content)
             throws DatasourceException, DeserializeException, IllegalArgumentException;
 
+    public String enqueue(String databaseName, String collectionName, String content)
+            throws DeserializeException, IllegalArgumentException, QueueFullException;
+
+    BulkInsertResult addAll(String databaseName, String collectionName, List<String> contents, boolean ordered, int batchSize)
+            throws DatasourceException, IllegalArgumentException;
+
+    ImportResult importAll(String databaseName, String collectionName, JsonDocumentReader reader, int batchSize, int maxInFlight)
+            throws IllegalArgumentException;
+
+    BulkWriteSummary bulkWrite(String databaseName, String collectionName, List<String> operations, boolean ordered)
+            throws DatasourceException, IllegalArgumentException;
+
     boolean replaceById(String databaseName, String collectionName, String documentId, String content)
             throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
 
+    boolean updateById(String databaseName, String collectionName, String documentId, String update)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
+
+    String updateAndGetById(String databaseName, String collectionName, String documentId, String update)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
+
+    String increment(String databaseName, String collectionName, String documentId, String amounts, boolean upsert)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
+
+    String findOneAndUpdate(String databaseName, String collectionName, String request)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
+
+    String findOneAndDelete(String databaseName, String collectionName, String request)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException;
+
     boolean deleteById(String databaseName, String collectionName, String documentId)
             throws DatasourceException, NotFoundException;
 
@@ -16,23 +16,56 @@
 package org.bananaforscale.cormac.dao.document;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
 import org.bananaforscale.cormac.dao.AbstractDataService;
+import org.bananaforscale.cormac.dao.ConcernOptions;
+import org.bananaforscale.cormac.dao.NamespaceCache;
 import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 import com.mongodb.util.JSON;
 import com.mongodb.util.JSONParseException;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.NotFoundException;
+import org.bananaforscale.cormac.exception.datasource.QueueFullException;
 import org.bananaforscale.cormac.exception.serialization.DeserializeException;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonParseException;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,10 +78,133 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentDataServiceImpl.class);
 
+    /**
+     * The page size used for keyset pagination when no limit is given.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MULTI_GET_BATCH_SIZE = 1000;
+    /**
+     * The number of documents sent with each insertMany of a bulk insert when
+     * no batch size is given.
+     */
+    private static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+    private static final int DEFAULT_IMPORT_MAX_IN_FLIGHT = 4;
+    /**
+     * The codes of the command errors caused by the request rather than by
+     * the server, such as an update of a field of the wrong type. 16836 and
+     * 16837 are the update errors of servers before 3.2.
+     */
+    private static final Set<Integer> REFUSED_CODES = new HashSet<>(Arrays.asList(
+            2, 9, 14, 16, 28, 40, 52, 54, 55, 56, 57, 66, 11000, 16836, 16837));
+
+    private boolean precheck = true;
+    private boolean rawJson = false;
+    private int bulkBatchSize = DEFAULT_BULK_BATCH_SIZE;
+    private Executor importExecutor;
+    private int importMaxInFlight = DEFAULT_IMPORT_MAX_IN_FLIGHT;
+    private ConcernOptions concern = ConcernOptions.NONE;
+    private IngestQueue ingestQueue;
+
     public DocumentDataServiceImpl(MongoClient mongoClient) {
         super(mongoClient);
     }
 
+    public DocumentDataServiceImpl(MongoClient mongoClient, NamespaceCache namespaceCache) {
+        super(mongoClient, namespaceCache);
+    }
+
+    /**
+     * Determines whether single document operations verify that the collection and document
+     * exist before running. When disabled only the operation itself is sent and the namespace is
+     * looked up afterwards if nothing matched, to report what was missing.
+     *
+     * @param precheck {@code true} to check for existence first, {@code false} to run the
+     * operation optimistically
+     */
+    public void setPrecheck(boolean precheck) {
+        this.precheck = precheck;
+    }
+
+    /**
+     * Determines whether streamed listings are fetched as raw BSON and
+     * transcoded directly to JSON instead of being decoded into documents
+     * and serialized again. The raw output differs from the legacy
+     * serializer for a few less common types, such as 64 bit integers
+     * outside of the 32 bit range and binary data.
+     *
+     * @param rawJson {@code true} to transcode raw BSON, {@code false} to use
+     * the legacy serializer
+     */
+    public void setRawJson(boolean rawJson) {
+        this.rawJson = rawJson;
+    }
+
+    /**
+     * Sets the number of documents sent with each insertMany of a bulk insert
+     * when the caller doesn't give a batch size.
+     *
+     * @param bulkBatchSize the batch size, values below 1 restore the default
+     */
+    public void setBulkBatchSize(int bulkBatchSize) {
+        this.bulkBatchSize = bulkBatchSize > 0 ? bulkBatchSize : DEFAULT_BULK_BATCH_SIZE;
+    }
+
+    /**
+     * Sets the executor inserting the batches of streamed imports while the
+     * body is still being read. Without an executor each batch is inserted
+     * before reading on.
+     *
+     * @param importExecutor the executor, or {@code null} to insert on the
+     * request thread
+     */
+    public void setImportExecutor(Executor importExecutor) {
+        this.importExecutor = importExecutor;
+    }
+
+    /**
+     * Sets the maximum number of batches of a streamed import that are read
+     * and not yet inserted, which bounds the memory an import can take.
+     *
+     * @param importMaxInFlight the number of batches, values below 1 restore
+     * the default
+     */
+    public void setImportMaxInFlight(int importMaxInFlight) {
+        this.importMaxInFlight = importMaxInFlight > 0 ? importMaxInFlight : DEFAULT_IMPORT_MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Sets the queue taking the documents of asynchronous inserts.
+     *
+     * @param ingestQueue the queue, or {@code null} to disable asynchronous
+     * inserts
+     */
+    public void setIngestQueue(IngestQueue ingestQueue) {
+        this.ingestQueue = ingestQueue;
+    }
+
+    /**
+     * Returns a view of this service whose operations use the given write
+     * concern and read preference, overriding the defaults of the
+     * collections. The view shares the settings and caches of this service.
+     *
+     * @param concern the settings of the request
+     * @return the view
+     */
+    @Override
+    public DocumentDataService withConcern(ConcernOptions concern) {
+        DocumentDataServiceImpl view = new DocumentDataServiceImpl(mongoClient, namespaceCache);
+        view.setPrecheck(precheck);
+        view.setRawJson(rawJson);
+        view.setBulkBatchSize(bulkBatchSize);
+        view.setImportExecutor(importExecutor);
+        view.setImportMaxInFlight(importMaxInFlight);
+        view.setDocumentCache(documentCache);
+        view.setConcernPolicy(concernPolicy);
+        view.setIngestQueue(ingestQueue);
+        view.concern = this.concern.overrideWith(concern);
+        return view;
+    }
+
     /**
      * Returns all the documents in a collection.
      *
@@ -67,14 +223,45 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
     @Override
     public List<String> getAll(String databaseName, String collectionName, String query, String fields, String skip, String limit, String orderBy, boolean includeId)
             throws DatasourceException, NotFoundException {
+        DocumentCursor cursor = openAll(databaseName, collectionName, query, fields, skip, limit, orderBy, includeId);
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
+            List<String> documentList = new ArrayList<>();
+            while (cursor.hasNext()) {
+                documentList.add(cursor.next());
             }
+            return documentList;
+        } catch (MongoException ex) {
+            logger.error("An error occured while retrieving the document list", ex);
+            throw new DatasourceException("An error occured while retrieving the document list");
+        } finally {
+            cursor.close();
+        }
+    }
 
-            if (!collectionExists(databaseName, collectionName)) {
-                throw new NotFoundException("The collection doesn't exist in the datasource");
-            }
+    /**
+     * Opens a cursor over the documents in a collection. Documents are
+     * fetched from the server in batches as the cursor is advanced, so the
+     * caller can write out results of any size without holding them in
+     * memory.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param query a JSON query param in the style of mongo
+     * @param fields fields to return
+     * @param skip the amount of documents to skip
+     * @param limit the amount of documents to limit the result to
+     * @param orderBy order ascending or descending by property
+     * @param includeId determines whether to include the Mongo "_id" field
+     * @return a cursor over the documents which must be closed by the caller
+     * @throws DatasourceException
+     * @throws IllegalArgumentException
+     * @throws NotFoundException
+     */
+    @Override
+    public DocumentCursor openAll(String databaseName, String collectionName, String query, String fields, String skip, String limit, String orderBy, boolean includeId)
+            throws DatasourceException, IllegalArgumentException, NotFoundException {
+        try {
+            requireCollection(databaseName, collectionName);
             Integer intSkip, intLimit;
             try {
                 intSkip = Integer.parseInt(skip);
@@ -86,57 +273,116 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
             } catch (NumberFormatException ex) {
                 intLimit = 0;
             }
+            Document orderByObject = parseOrderBy(orderBy);
+            Document projection = Projection.parse(fields, includeId).toDocument();
+            Document filter = (query == null || query.isEmpty()) ? new Document() : Document.parse(query);
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (rawJson) {
+                FindIterable<RawBsonDocument> iterable = collection.find(filter, RawBsonDocument.class);
+                applyOptions(iterable, projection, intSkip, intLimit, orderByObject);
+                return new RawJsonCursor(iterable.iterator());
+            }
+            FindIterable<Document> iterable = collection.find(filter);
+            applyOptions(iterable, projection, intSkip, intLimit, orderByObject);
+            return new SerializingCursor(iterable.iterator());
+        } catch (MongoException ex) {
+            logger.error("An error occured while retrieving the document list", ex);
+            throw new DatasourceException("An error occured while retrieving the document list");
+        }
+    }
 
-            // 1 or -1 to specify an ascending or descending sort respectively.
-            Document orderByObject = null;
-            if (orderBy != null && !orderBy.isEmpty()) {
-                if (orderBy.contains("ascending")) {
-                    String[] parts = orderBy.split(":");
-                    orderByObject = new Document(parts[0], 1);
-                } else if (orderBy.contains("descending")) {
-                    String[] parts = orderBy.split(":");
-                    orderByObject = new Document(parts[0], -1);
-                }
+    /**
+     * Returns a page of documents using keyset pagination. Instead of
+     * skipping over earlier pages the query resumes after the position
+     * encoded in the continuation token, so every page costs the same no
+     * matter how deep it is. Documents are ordered by the orderBy field, if
+     * any, and then by "_id".
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param query a JSON query param in the style of mongo
+     * @param fields fields to return
+     * @param limit the page size
+     * @param orderBy order ascending or descending by property
+     * @param includeId determines whether to include the Mongo "_id" field
+     * @param continuationToken the token returned with the previous page, or
+     * {@code null} for the first page
+     * @return the page of documents
+     * @throws DatasourceException
+     * @throws IllegalArgumentException
+     * @throws NotFoundException
+     */
+    @Override
+    public DocumentPage getPage(String databaseName, String collectionName, String query, String fields, String limit, String orderBy, boolean includeId, String continuationToken)
+            throws DatasourceException, IllegalArgumentException, NotFoundException {
+        try {
+            requireCollection(databaseName, collectionName);
+            int pageSize;
+            try {
+                pageSize = Integer.parseInt(limit);
+            } catch (NumberFormatException ex) {
+                pageSize = DEFAULT_PAGE_SIZE;
             }
-            MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
-            MongoCollection collection = mongoDatabase.getCollection(collectionName);
-            FindIterable iterable = (query == null || query.isEmpty())
-                    ? collection.find() : collection.find(Document.parse(query));
-
-            // TODO: Figure out how to do this in new API
-//            if (fields != null && !fields.isEmpty()) {
-//                // expect the form to be field:value,field:value
-//                Document document = new Document();
-//                String[] parts = fields.split(",");
-//                for (String part : parts) {
-//                    String[] tempParts = part.split(":");
-//                    document.append(tempParts[0], tempParts[1]);
-//                }
-//                iterable.projection(document);
-//            }
-            iterable.skip(intSkip);
-            iterable.limit(intLimit);
+            if (pageSize <= 0) {
+                pageSize = DEFAULT_PAGE_SIZE;
+            }
+            Document orderByObject = parseOrderBy(orderBy);
+            String sortField = null;
+            int direction = 1;
             if (orderByObject != null) {
-                iterable.sort(orderByObject);
+                sortField = orderByObject.keySet().iterator().next();
+                direction = orderByObject.getInteger(sortField);
+            }
+            // the token needs "_id" and the sort field even when the caller
+            // didn't ask for them, they are stripped again once it is built
+            Projection retained = Projection.parse(fields, includeId).retain("_id", sortField);
+            Document filter = (query == null || query.isEmpty()) ? null : Document.parse(query);
+            if (continuationToken != null && !continuationToken.isEmpty()) {
+                ContinuationToken token = ContinuationToken.decode(continuationToken);
+                token.verifyOrder(sortField, direction);
+                filter = filter == null ? token.toFilter()
+                        : new Document("$and", Arrays.asList(filter, token.toFilter()));
+            }
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            FindIterable<Document> iterable = filter == null ? collection.find() : collection.find(filter);
+            Document projection = retained.toDocument();
+            if (projection != null) {
+                iterable.projection(projection);
             }
-            Iterator<Document> curIter = iterable.iterator();
+            // one extra document tells whether another page follows
+            iterable.sort(ContinuationToken.sort(sortField, direction));
+            iterable.limit(pageSize + 1);
             List<String> documentList = new ArrayList<>();
-            while (curIter.hasNext()) {
-                Document current = curIter.next();
-                if (!includeId) {
-                    current.remove("_id");
+            Document last = null;
+            String nextToken = null;
+            MongoCursor<Document> cursor = iterable.iterator();
+            try {
+                while (cursor.hasNext()) {
+                    Document current = cursor.next();
+                    if (documentList.size() == pageSize) {
+                        nextToken = ContinuationToken.after(sortField, direction, last).encode();
+                        break;
+                    }
+                    last = current;
+                    current = new Document(current);
+                    retained.removeRetained(current);
+                    documentList.add(JSON.serialize(current));
                 }
-                documentList.add(JSON.serialize(current));
+            } finally {
+                cursor.close();
             }
-            return documentList;
+            return new DocumentPage(documentList, nextToken);
         } catch (MongoException ex) {
-            logger.error("An error occured while retrieving the document list", ex);
-            throw new DatasourceException("An error occured while retrieving the document list");
+            logger.error("An error occured while retrieving the document page", ex);
+            throw new DatasourceException("An error occured while retrieving the document page");
         }
     }
 
     /**
-     * Returns the document of the given document identifier.
+     * Returns the document of the given document identifier. Documents of
+     * collections selected for caching are served from the document cache
+     * when present and cached once read from the primary, as a secondary may
+     * return a document older than the last write.
      *
      * @param databaseName the database
      * @param collectionName the collection
@@ -149,27 +395,111 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
     public String getById(String databaseName, String collectionName, String documentId)
             throws DatasourceException, NotFoundException {
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            ObjectId id = new ObjectId(documentId);
+            Document query = new Document("_id", id);
+            boolean cached = documentCache != null && documentCache.isCached(databaseName, collectionName);
+            long stamp = 0;
+            if (cached) {
+                String document = documentCache.get(databaseName, collectionName, id.toHexString());
+                if (document != null) {
+                    return document;
+                }
+                stamp = documentCache.stamp(databaseName, collectionName, id.toHexString());
             }
-            if (!collectionExists(databaseName, collectionName)) {
-                throw new NotFoundException("The collection doesn't exist in the datasource");
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+                if (collection.count(query) == 0) {
+                    throw new NotFoundException("The document doesn't exist in the datasource");
+                }
             }
-            MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
-            MongoCollection<Document> collection = mongoDatabase.getCollection(collectionName);
-            Document query = new Document("_id", new ObjectId(documentId));
-            if (collection.count(query) == 0) {
+            Document document = collection.find(query).first();
+            if (document == null) {
+                requireCollection(databaseName, collectionName);
                 throw new NotFoundException("The document doesn't exist in the datasource");
             }
-            Document document = collection.find(query).first();
             document.remove("_id");
-            return JSON.serialize(document);
+            String json = JSON.serialize(document);
+            if (cached && ReadPreference.primary().equals(collection.getReadPreference())) {
+                documentCache.put(databaseName, collectionName, id.toHexString(), json, stamp);
+            }
+            return json;
         } catch (MongoException ex) {
             logger.error("An error occured while retrieving the document", ex);
             throw new DatasourceException("An error occured while retrieving the document");
         }
     }
 
+    /**
+     * Returns the documents of the given document identifiers. The
+     * identifiers are looked up with "$in" queries of at most
+     * {@value #MULTI_GET_BATCH_SIZE} identifiers each, so a single round trip
+     * usually replaces a request per document. The documents are returned in
+     * the order they were requested, including their "_id" field, and
+     * identifiers that matched no document are listed separately. Duplicate
+     * identifiers are returned once.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentIds the document identifiers to query for
+     * @return the documents found and the identifiers not found
+     * @throws DatasourceException
+     * @throws IllegalArgumentException
+     * @throws NotFoundException
+     */
+    @Override
+    public DocumentBatch getByIds(String databaseName, String collectionName, List<String> documentIds)
+            throws DatasourceException, IllegalArgumentException, NotFoundException {
+        if (documentIds == null) {
+            throw new IllegalArgumentException("The document identifiers are missing");
+        }
+        Map<String, ObjectId> requested = new LinkedHashMap<>();
+        for (String documentId : documentIds) {
+            if (documentId == null || !ObjectId.isValid(documentId)) {
+                throw new IllegalArgumentException("The document identifiers must be valid object ids");
+            }
+            requested.put(documentId, new ObjectId(documentId));
+        }
+        try {
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+            }
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            Map<ObjectId, String> found = new HashMap<>();
+            List<ObjectId> ids = new ArrayList<>(requested.values());
+            for (int from = 0; from < ids.size(); from += MULTI_GET_BATCH_SIZE) {
+                List<ObjectId> chunk = ids.subList(from, Math.min(from + MULTI_GET_BATCH_SIZE, ids.size()));
+                MongoCursor<Document> cursor = collection.find(
+                        new Document("_id", new Document("$in", chunk))).iterator();
+                try {
+                    while (cursor.hasNext()) {
+                        Document document = cursor.next();
+                        found.put(document.getObjectId("_id"), JSON.serialize(document));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            if (found.isEmpty() && !precheck) {
+                requireCollection(databaseName, collectionName);
+            }
+            List<String> documentList = new ArrayList<>(found.size());
+            List<String> missing = new ArrayList<>();
+            for (Map.Entry<String, ObjectId> entry : requested.entrySet()) {
+                String document = found.get(entry.getValue());
+                if (document == null) {
+                    missing.add(entry.getKey());
+                } else {
+                    documentList.add(document);
+                }
+            }
+            return new DocumentBatch(documentList, missing);
+        } catch (MongoException ex) {
+            logger.error("An error occured while retrieving the documents", ex);
+            throw new DatasourceException("An error occured while retrieving the documents");
+        }
+    }
+
     /**
      * Saves a document to the collection. If the specified database and
      * collection do not exist they will be created.
@@ -189,10 +519,10 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
             if (!validInputForAddOrUpdate(databaseName, collectionName, "temp", content)) {
                 throw new IllegalArgumentException();
             }
-            MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
-            MongoCollection<Document> collection = mongoDatabase.getCollection(collectionName);
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
             Document document = Document.parse(content);
             collection.insertOne(document);
+            ensureNamespace(databaseName, collectionName);
             return document.get("_id").toString();
         } catch (IllegalArgumentException | ClassCastException | JSONParseException ex) {
             logger.error("The JSON payload is invalid", ex);
@@ -203,6 +533,325 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
         }
     }
 
+    /**
+     * Queues a document to be inserted into the collection later, together
+     * with other queued documents, without waiting for the datasource. An
+     * identifier is assigned to the document if it has none, so that it can
+     * be returned before the document is inserted. The write concern of the
+     * request doesn't apply, the defaults of the collection do.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param content the JSON payload
+     * @return the id the document will be inserted with
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if the collection doesn't accept
+     * asynchronous inserts
+     * @throws QueueFullException if the queue of the collection is full
+     */
+    @Override
+    public String enqueue(String databaseName, String collectionName, String content)
+            throws DeserializeException, IllegalArgumentException, QueueFullException {
+        if (!validInputForAddOrUpdate(databaseName, collectionName, "temp", content)) {
+            throw new IllegalArgumentException();
+        }
+        if (ingestQueue == null || !ingestQueue.accepts(databaseName, collectionName)) {
+            throw new IllegalArgumentException("The collection doesn't accept asynchronous inserts");
+        }
+        Document document;
+        try {
+            document = Document.parse(content);
+        } catch (JsonParseException | BsonInvalidOperationException | ClassCastException ex) {
+            logger.error("The JSON payload is invalid", ex);
+            throw new DeserializeException("The JSON payload is invalid");
+        }
+        if (!document.containsKey("_id")) {
+            document.put("_id", new ObjectId());
+        }
+        if (!ingestQueue.offer(databaseName, collectionName, document)) {
+            throw new QueueFullException("The ingest queue of the collection is full, retry later");
+        }
+        return document.get("_id").toString();
+    }
+
+    /**
+     * Saves several documents to the collection with one insertMany per batch
+     * instead of a round trip per document. If the specified database and
+     * collection do not exist they will be created. A document that isn't
+     * valid JSON is rejected on its own. In ordered mode the insert stops at
+     * the first rejected document, as MongoDB does within a batch; in
+     * unordered mode the remaining documents are still inserted.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param contents the JSON payloads
+     * @param ordered whether to stop at the first rejected document
+     * @param batchSize the number of documents per insertMany, or 0 for the
+     * configured default
+     * @return the identifiers of the inserted documents and the errors of the
+     * rejected ones
+     * @throws DatasourceException
+     * @throws IllegalArgumentException
+     */
+    @Override
+    public BulkInsertResult addAll(String databaseName, String collectionName, List<String> contents, boolean ordered, int batchSize)
+            throws DatasourceException, IllegalArgumentException {
+        if (databaseName == null || databaseName.isEmpty()
+                || collectionName == null || collectionName.isEmpty() || contents == null) {
+            throw new IllegalArgumentException();
+        }
+        int size = batchSize > 0 ? batchSize : bulkBatchSize;
+        List<String> ids = new ArrayList<>(contents.size());
+        SortedMap<Integer, String> errors = new TreeMap<>();
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            InsertManyOptions options = new InsertManyOptions().ordered(ordered);
+            List<Document> batch = new ArrayList<>(Math.min(size, contents.size()));
+            List<Integer> positions = new ArrayList<>(Math.min(size, contents.size()));
+            boolean stopped = false;
+            for (int i = 0; i < contents.size() && !stopped; i++) {
+                ids.add(null);
+                Document document;
+                try {
+                    document = Document.parse(contents.get(i));
+                } catch (IllegalArgumentException | ClassCastException | JsonParseException | BsonInvalidOperationException ex) {
+                    errors.put(i, "The JSON payload is invalid");
+                    if (ordered) {
+                        stopped = true;
+                        insertBatch(collection, options, batch, positions, ids, errors);
+                    }
+                    continue;
+                }
+                batch.add(document);
+                positions.add(i);
+                if (batch.size() == size) {
+                    stopped = !insertBatch(collection, options, batch, positions, ids, errors) && ordered;
+                }
+            }
+            if (!stopped) {
+                insertBatch(collection, options, batch, positions, ids, errors);
+            }
+            while (ids.size() < contents.size()) {
+                ids.add(null);
+            }
+            if (errors.size() < contents.size()) {
+                ensureNamespace(databaseName, collectionName);
+            }
+            return new BulkInsertResult(ids, errors);
+        } catch (MongoException ex) {
+            logger.error("An error occured while adding the documents", ex);
+            throw new DatasourceException("An error occured while adding the documents");
+        }
+    }
+
+    /**
+     * Imports the documents of a JSON array or newline delimited JSON body
+     * while it is being read. Documents are inserted unordered in batches,
+     * and reading pauses whenever the maximum number of batches are waiting
+     * to be inserted, so the memory taken doesn't depend on the size of the
+     * body. Documents that can't be parsed or inserted are rejected on their
+     * own. If the specified database and collection do not exist they will
+     * be created.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param reader the body
+     * @param batchSize the number of documents per insertMany, or 0 for the
+     * configured default
+     * @param maxInFlight the maximum number of batches waiting to be inserted,
+     * or 0 for the configured maximum which also caps larger values
+     * @return the progress counters, the first rejections, and the error that
+     * ended the import early, if any
+     * @throws IllegalArgumentException
+     */
+    @Override
+    public ImportResult importAll(String databaseName, String collectionName, JsonDocumentReader reader, int batchSize, int maxInFlight)
+            throws IllegalArgumentException {
+        if (databaseName == null || databaseName.isEmpty()
+                || collectionName == null || collectionName.isEmpty() || reader == null) {
+            throw new IllegalArgumentException();
+        }
+        int size = batchSize > 0 ? batchSize : bulkBatchSize;
+        int inFlight = maxInFlight > 0 ? Math.min(maxInFlight, importMaxInFlight) : importMaxInFlight;
+        MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+        ImportResult result = new DocumentImport(collection, importExecutor, size, inFlight).run(reader);
+        if (result.getInserted() > 0) {
+            ensureNamespace(databaseName, collectionName);
+        }
+        return result;
+    }
+
+    /**
+     * Applies a list of inserts, replacements, updates and deletes to the
+     * collection with a single bulk write, so the whole list costs about one
+     * round trip instead of one request per operation and no existence
+     * checks are made. Operations take the form of the MongoDB shell, such as
+     * {@code {"deleteOne": {"filter": {...}}}}. In ordered mode the write
+     * stops at the first failed operation; in unordered mode the remaining
+     * operations are still applied. If the specified database and collection
+     * do not exist they will be created by inserts and upserts.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param operations the operations as JSON
+     * @param ordered whether to stop at the first failed operation
+     * @return the totals of the write and the outcome of each operation
+     * @throws DatasourceException
+     * @throws IllegalArgumentException if an operation is malformed, in which
+     * case nothing is written
+     */
+    @Override
+    public BulkWriteSummary bulkWrite(String databaseName, String collectionName, List<String> operations, boolean ordered)
+            throws DatasourceException, IllegalArgumentException {
+        if (databaseName == null || databaseName.isEmpty()
+                || collectionName == null || collectionName.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalArgumentException("The operations are missing");
+        }
+        List<WriteOperation> parsed = new ArrayList<>(operations.size());
+        List<WriteModel<Document>> models = new ArrayList<>(operations.size());
+        boolean changesDocuments = false;
+        for (int i = 0; i < operations.size(); i++) {
+            WriteOperation operation;
+            try {
+                operation = WriteOperation.parse(operations.get(i));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Operation " + i + ": " + ex.getMessage());
+            }
+            parsed.add(operation);
+            models.add(operation.getModel());
+            changesDocuments |= !WriteOperation.INSERT_ONE.equals(operation.getType());
+        }
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            BulkWriteResult result;
+            List<BulkWriteError> writeErrors = Collections.emptyList();
+            String writeConcernError = null;
+            try {
+                result = collection.bulkWrite(models, new BulkWriteOptions().ordered(ordered));
+            } catch (MongoBulkWriteException ex) {
+                result = ex.getWriteResult();
+                writeErrors = ex.getWriteErrors();
+                if (ex.getWriteConcernError() != null) {
+                    writeConcernError = ex.getWriteConcernError().getMessage();
+                }
+            }
+            BulkWriteSummary summary = summarize(parsed, result, writeErrors, writeConcernError, ordered);
+            if (!summary.isAcknowledged() || summary.getInserted() + summary.getUpserted() > 0) {
+                ensureNamespace(databaseName, collectionName);
+            }
+            return summary;
+        } catch (MongoException ex) {
+            logger.error("An error occured while writing the documents", ex);
+            throw new DatasourceException("An error occured while writing the documents");
+        } finally {
+            // filters may match any document, so cached documents can't be kept
+            if (changesDocuments) {
+                invalidateDocuments(databaseName, collectionName);
+            }
+        }
+    }
+
+    /**
+     * Builds the summary of a bulk write from the result reported by the
+     * server and the errors of the operations that failed.
+     */
+    private static BulkWriteSummary summarize(List<WriteOperation> operations, BulkWriteResult result,
+            List<BulkWriteError> writeErrors, String writeConcernError, boolean ordered) {
+        Map<Integer, String> errors = new HashMap<>();
+        int firstError = -1;
+        for (BulkWriteError error : writeErrors) {
+            errors.put(error.getIndex(), error.getMessage());
+            if (firstError < 0 || error.getIndex() < firstError) {
+                firstError = error.getIndex();
+            }
+        }
+        Map<Integer, String> upserts = new HashMap<>();
+        if (result.wasAcknowledged()) {
+            for (BulkWriteUpsert upsert : result.getUpserts()) {
+                upserts.put(upsert.getIndex(), idToString(upsert.getId()));
+            }
+        }
+        List<BulkWriteSummary.OperationResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            WriteOperation operation = operations.get(i);
+            if (errors.containsKey(i)) {
+                results.add(new BulkWriteSummary.OperationResult(operation.getType(),
+                        BulkWriteSummary.OperationResult.ERROR, null, errors.get(i)));
+            } else if (ordered && firstError >= 0 && i > firstError) {
+                results.add(new BulkWriteSummary.OperationResult(operation.getType(),
+                        BulkWriteSummary.OperationResult.SKIPPED, null, null));
+            } else {
+                String id = upserts.containsKey(i) ? upserts.get(i) : operation.getInsertedId();
+                results.add(new BulkWriteSummary.OperationResult(operation.getType(),
+                        BulkWriteSummary.OperationResult.OK, id, null));
+            }
+        }
+        if (!result.wasAcknowledged()) {
+            return new BulkWriteSummary(false, 0, 0, null, 0, 0, results, writeConcernError);
+        }
+        return new BulkWriteSummary(true, result.getInsertedCount(), result.getMatchedCount(),
+                result.isModifiedCountAvailable() ? result.getModifiedCount() : null,
+                result.getDeletedCount(), result.getUpserts().size(), results, writeConcernError);
+    }
+
+    /**
+     * Renders a document identifier the way the other operations return it:
+     * object ids as their hex string and other values as their text.
+     */
+    private static String idToString(BsonValue id) {
+        if (id == null) {
+            return null;
+        } else if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        } else if (id.isString()) {
+            return id.asString().getValue();
+        } else if (id.isInt32()) {
+            return String.valueOf(id.asInt32().getValue());
+        } else if (id.isInt64()) {
+            return String.valueOf(id.asInt64().getValue());
+        }
+        return id.toString();
+    }
+
+    /**
+     * Inserts a batch of a bulk insert and records the identifiers of the
+     * documents inserted and the errors of those rejected at their position
+     * in the bulk insert. The batch is cleared afterwards.
+     *
+     * @return {@code true} if every document of the batch was inserted
+     */
+    private static boolean insertBatch(MongoCollection<Document> collection, InsertManyOptions options,
+            List<Document> batch, List<Integer> positions, List<String> ids, SortedMap<Integer, String> errors) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            collection.insertMany(batch, options);
+            for (int i = 0; i < batch.size(); i++) {
+                ids.set(positions.get(i), batch.get(i).get("_id").toString());
+            }
+            return true;
+        } catch (MongoBulkWriteException ex) {
+            // ordered batches stop at the first error, so nothing after it was written
+            int end = options.isOrdered() && !ex.getWriteErrors().isEmpty()
+                    ? ex.getWriteErrors().get(0).getIndex() : batch.size();
+            for (int i = 0; i < end; i++) {
+                ids.set(positions.get(i), batch.get(i).get("_id").toString());
+            }
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                ids.set(positions.get(error.getIndex()), null);
+                errors.put(positions.get(error.getIndex()), error.getMessage());
+            }
+            return false;
+        } finally {
+            batch.clear();
+            positions.clear();
+        }
+    }
+
     /**
      * Updates a document in the collection. If the document exists in the
      * collection it will be updated. If the document doesn't exist an error
@@ -226,14 +875,21 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
             if (!validInputForAddOrUpdate(databaseName, collectionName, documentId, content)) {
                 throw new IllegalArgumentException();
             }
-            MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
-            MongoCollection<Document> collection = mongoDatabase.getCollection(collectionName);
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
             Document query = new Document("_id", new ObjectId(documentId));
             Document document = Document.parse(content);
-            if (collection.count(query) == 0) {
+            if (precheck && collection.count(query) == 0) {
+                throw new NotFoundException("The document doesn't exist in the collection");
+            }
+            UpdateResult result;
+            try {
+                result = collection.replaceOne(query, document);
+            } finally {
+                invalidateDocument(databaseName, collectionName, query.get("_id").toString());
+            }
+            if (result.wasAcknowledged() && result.getMatchedCount() == 0) {
                 throw new NotFoundException("The document doesn't exist in the collection");
             }
-            collection.replaceOne(query, document);
             return true;
         } catch (IllegalArgumentException | ClassCastException | JSONParseException ex) {
             logger.error("The JSON payload is invalid", ex);
@@ -244,6 +900,290 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
         }
     }
 
+    /**
+     * Applies update operators such as "$set", "$unset", "$inc" and "$push"
+     * to a document on the server, so only the changes are sent and
+     * concurrent updates of different fields don't overwrite each other.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentId the document identifier
+     * @param update the JSON update document
+     * @return the result of the operation
+     * @throws DatasourceException
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if the update isn't made of update
+     * operators or the server refuses it
+     * @throws NotFoundException
+     */
+    @Override
+    public boolean updateById(String databaseName, String collectionName, String documentId, String update)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException {
+        Document query = new Document("_id", parseDocumentId(documentId));
+        Document updateObject = parseUpdate(update);
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+                if (collection.count(query) == 0) {
+                    throw new NotFoundException("The document doesn't exist in the collection");
+                }
+            }
+            UpdateResult result;
+            try {
+                result = collection.updateOne(query, updateObject);
+            } finally {
+                invalidateDocument(databaseName, collectionName, query.get("_id").toString());
+            }
+            if (result.wasAcknowledged() && result.getMatchedCount() == 0) {
+                requireCollection(databaseName, collectionName);
+                throw new NotFoundException("The document doesn't exist in the collection");
+            }
+            return true;
+        } catch (MongoWriteException ex) {
+            if (REFUSED_CODES.contains(ex.getError().getCode())) {
+                throw new IllegalArgumentException("The update was refused: " + ex.getError().getMessage());
+            }
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        } catch (MongoException ex) {
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        }
+    }
+
+    /**
+     * Applies update operators to a document on the server and returns the
+     * document as it is after the update, in a single round trip.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentId the document identifier
+     * @param update the JSON update document
+     * @return the updated document
+     * @throws DatasourceException
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if the update isn't made of update
+     * operators or the server refuses it
+     * @throws NotFoundException
+     */
+    @Override
+    public String updateAndGetById(String databaseName, String collectionName, String documentId, String update)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException {
+        Document query = new Document("_id", parseDocumentId(documentId));
+        Document updateObject = parseUpdate(update);
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+            }
+            Document document;
+            try {
+                document = collection.findOneAndUpdate(query, updateObject,
+                        new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+            } finally {
+                invalidateDocument(databaseName, collectionName, query.get("_id").toString());
+            }
+            if (document == null) {
+                requireCollection(databaseName, collectionName);
+                throw new NotFoundException("The document doesn't exist in the collection");
+            }
+            document.remove("_id");
+            return JSON.serialize(document);
+        } catch (MongoCommandException ex) {
+            if (isRefused(ex)) {
+                throw new IllegalArgumentException("The update was refused: " + ex.getErrorMessage());
+            }
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        } catch (MongoException ex) {
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        }
+    }
+
+    /**
+     * Atomically adds to numeric fields of a document and returns their new
+     * values, in one round trip. Missing fields start from zero. Concurrent
+     * increments of the same document are serialized by the server, so none
+     * is lost and no retry is needed.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentId the document identifier
+     * @param amounts a JSON document of the fields to increment and the
+     * amount to add to each, which may be negative
+     * @param upsert whether to create the document if it doesn't exist
+     * @return the new values of the incremented fields as a JSON document
+     * @throws DatasourceException
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if an amount isn't a number or a field
+     * can't be incremented
+     * @throws NotFoundException
+     */
+    @Override
+    public String increment(String databaseName, String collectionName, String documentId, String amounts, boolean upsert)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException {
+        Document query = new Document("_id", parseDocumentId(documentId));
+        Document increments = parseDocument(amounts);
+        if (increments.isEmpty()) {
+            throw new IllegalArgumentException("The fields to increment are missing");
+        }
+        Document projection = new Document("_id", 0);
+        for (Map.Entry<String, Object> entry : increments.entrySet()) {
+            if (entry.getKey().startsWith("$") || "_id".equals(entry.getKey())) {
+                throw new IllegalArgumentException("The field " + entry.getKey() + " can't be incremented");
+            }
+            if (!(entry.getValue() instanceof Number)) {
+                throw new IllegalArgumentException("The amount of " + entry.getKey() + " must be a number");
+            }
+            projection.append(entry.getKey(), 1);
+        }
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (precheck && !upsert) {
+                requireCollection(databaseName, collectionName);
+            }
+            Document document;
+            try {
+                document = collection.findOneAndUpdate(query, new Document("$inc", increments),
+                        new FindOneAndUpdateOptions().projection(projection).upsert(upsert)
+                        .returnDocument(ReturnDocument.AFTER));
+            } finally {
+                invalidateDocument(databaseName, collectionName, query.get("_id").toString());
+            }
+            if (document == null) {
+                requireCollection(databaseName, collectionName);
+                throw new NotFoundException("The document doesn't exist in the collection");
+            }
+            if (upsert) {
+                ensureNamespace(databaseName, collectionName);
+            }
+            return JSON.serialize(document);
+        } catch (MongoCommandException ex) {
+            if (isRefused(ex)) {
+                throw new IllegalArgumentException("The increment was refused: " + ex.getErrorMessage());
+            }
+            logger.error("An error occured while incrementing the document", ex);
+            throw new DatasourceException("An error occured while incrementing the document");
+        } catch (MongoException ex) {
+            logger.error("An error occured while incrementing the document", ex);
+            throw new DatasourceException("An error occured while incrementing the document");
+        }
+    }
+
+    /**
+     * Atomically finds a document and updates it, returning the document
+     * either as it was before the update or as it is after. With a sort the
+     * first matching document in that order is updated, which suits claiming
+     * the next job of a queue. The request is a JSON document with the fields
+     * "filter", "update", "sort", "projection", "upsert" and "returnDocument"
+     * ("before" or "after"), of which only the update is required.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param request the JSON request
+     * @return the document, or {@code null} if the document was upserted and
+     * the document before the update was asked for
+     * @throws DatasourceException
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if the request is malformed or the
+     * server refuses the update
+     * @throws NotFoundException if no document matched and none was upserted
+     */
+    @Override
+    public String findOneAndUpdate(String databaseName, String collectionName, String request)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException {
+        FindAndModify options = FindAndModify.parse(parseDocument(request), true);
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (precheck && !options.isUpsert()) {
+                requireCollection(databaseName, collectionName);
+            }
+            Document document = null;
+            boolean completed = false;
+            try {
+                document = collection.findOneAndUpdate(options.getFilter(), options.getUpdate(),
+                        options.toUpdateOptions());
+                completed = true;
+            } finally {
+                // nothing cached was modified if the command completed without a document
+                if (!completed || document != null) {
+                    invalidateModified(databaseName, collectionName, document);
+                }
+            }
+            if (options.isUpsert()) {
+                ensureNamespace(databaseName, collectionName);
+            } else if (document == null) {
+                requireCollection(databaseName, collectionName);
+                throw new NotFoundException("No document matched the filter");
+            }
+            return document == null ? null : JSON.serialize(document);
+        } catch (MongoCommandException ex) {
+            if (isRefused(ex)) {
+                throw new IllegalArgumentException("The update was refused: " + ex.getErrorMessage());
+            }
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        } catch (MongoException ex) {
+            logger.error("An error occured while updating the document", ex);
+            throw new DatasourceException("An error occured while updating the document");
+        }
+    }
+
+    /**
+     * Atomically finds a document and deletes it, returning the deleted
+     * document. With a sort the first matching document in that order is
+     * deleted. The request is a JSON document with the fields "filter",
+     * "sort" and "projection", all optional.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param request the JSON request
+     * @return the deleted document
+     * @throws DatasourceException
+     * @throws DeserializeException
+     * @throws IllegalArgumentException if the request is malformed
+     * @throws NotFoundException if no document matched
+     */
+    @Override
+    public String findOneAndDelete(String databaseName, String collectionName, String request)
+            throws DatasourceException, DeserializeException, IllegalArgumentException, NotFoundException {
+        FindAndModify options = FindAndModify.parse(
+                request == null || request.trim().isEmpty() ? new Document() : parseDocument(request), false);
+        try {
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+            }
+            Document document = null;
+            boolean completed = false;
+            try {
+                document = collection.findOneAndDelete(options.getFilter(), options.toDeleteOptions());
+                completed = true;
+            } finally {
+                // nothing was deleted if the command completed without a document
+                if (!completed || document != null) {
+                    invalidateModified(databaseName, collectionName, document);
+                }
+            }
+            if (document == null) {
+                requireCollection(databaseName, collectionName);
+                throw new NotFoundException("No document matched the filter");
+            }
+            return JSON.serialize(document);
+        } catch (MongoCommandException ex) {
+            if (isRefused(ex)) {
+                throw new IllegalArgumentException("The delete was refused: " + ex.getErrorMessage());
+            }
+            logger.error("An error occured while deleting the document", ex);
+            throw new DatasourceException("An error occured while deleting the document");
+        } catch (MongoException ex) {
+            logger.error("An error occured while deleting the document", ex);
+            throw new DatasourceException("An error occured while deleting the document");
+        }
+    }
+
     /**
      * Removes a document in the collection.
      *
@@ -258,19 +1198,24 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
     public boolean deleteById(String databaseName, String collectionName, String documentId)
             throws DatasourceException, NotFoundException {
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
+            MongoCollection<Document> collection = getCollection(databaseName, collectionName, concern);
+            Document query = new Document("_id", new ObjectId(documentId));
+            if (precheck) {
+                requireCollection(databaseName, collectionName);
+                if (collection.count(query) == 0) {
+                    throw new NotFoundException("The document doesn't exist in the datasource");
+                }
             }
-            if (!collectionExists(databaseName, collectionName)) {
-                throw new NotFoundException("The collection doesn't exist in the datasource");
+            DeleteResult result;
+            try {
+                result = collection.deleteOne(query);
+            } finally {
+                invalidateDocument(databaseName, collectionName, query.get("_id").toString());
             }
-            MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
-            MongoCollection<Document> collection = mongoDatabase.getCollection(collectionName);
-            Document query = new Document("_id", new ObjectId(documentId));
-            if (collection.count(query) == 0) {
+            if (result.wasAcknowledged() && result.getDeletedCount() == 0) {
+                requireCollection(databaseName, collectionName);
                 throw new NotFoundException("The document doesn't exist in the datasource");
             }
-            collection.deleteOne(query);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while updating the document", ex);
@@ -296,15 +1241,20 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
             throws DatasourceException, NotFoundException {
         try {
 
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
-            }
-            if (!collectionExists(databaseName, collectionName)) {
-                throw new NotFoundException("The collection doesn't exist in the datasource");
-            }
+            requireCollection(databaseName, collectionName);
             DB mongoDatabase = mongoClient.getDB(databaseName);
             DBCollection collection = mongoDatabase.getCollection(collectionName);
-            collection.remove(new BasicDBObject());
+            WriteConcern writeConcern = concernPolicy.forNamespace(databaseName, collectionName)
+                    .overrideWith(concern).getWriteConcern();
+            try {
+                if (writeConcern == null) {
+                    collection.remove(new BasicDBObject());
+                } else {
+                    collection.remove(new BasicDBObject(), writeConcern);
+                }
+            } finally {
+                invalidateDocuments(databaseName, collectionName);
+            }
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while updating the document", ex);
@@ -312,6 +1262,104 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
         }
     }
 
+    /**
+     * Parses the orderBy parameter in the form "field:ascending" or
+     * "field:descending".
+     *
+     * @return the sort specification or {@code null} if none was requested
+     */
+    private Document parseOrderBy(String orderBy) {
+        // 1 or -1 to specify an ascending or descending sort respectively.
+        Document orderByObject = null;
+        if (orderBy != null && !orderBy.isEmpty()) {
+            if (orderBy.contains("ascending")) {
+                String[] parts = orderBy.split(":");
+                orderByObject = new Document(parts[0], 1);
+            } else if (orderBy.contains("descending")) {
+                String[] parts = orderBy.split(":");
+                orderByObject = new Document(parts[0], -1);
+            }
+        }
+        return orderByObject;
+    }
+
+    /**
+     * Parses a document identifier given by the caller.
+     *
+     * @throws IllegalArgumentException if the identifier isn't an object id
+     */
+    private static ObjectId parseDocumentId(String documentId) {
+        if (documentId == null || !ObjectId.isValid(documentId)) {
+            throw new IllegalArgumentException("The document identifier must be a valid object id");
+        }
+        return new ObjectId(documentId);
+    }
+
+    /**
+     * Determines whether the server refused a command because of the request,
+     * as opposed to failures such as a lost primary, missing privileges or an
+     * interrupted operation.
+     */
+    private static boolean isRefused(MongoCommandException ex) {
+        return REFUSED_CODES.contains(ex.getErrorCode());
+    }
+
+    /**
+     * Parses an update made of update operators.
+     *
+     * @throws DeserializeException if the update isn't a JSON document
+     * @throws IllegalArgumentException if the update has fields that aren't
+     * update operators
+     */
+    private static Document parseUpdate(String update) throws DeserializeException {
+        return WriteOperation.requireOperators(parseDocument(update));
+    }
+
+    /**
+     * Parses a JSON document given by the caller.
+     *
+     * @throws DeserializeException if the content isn't a JSON document
+     */
+    private static Document parseDocument(String content) throws DeserializeException {
+        try {
+            if (content == null || content.isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+            return Document.parse(content);
+        } catch (IllegalArgumentException | ClassCastException | JsonParseException | BsonInvalidOperationException ex) {
+            logger.error("The JSON payload is invalid", ex);
+            throw new DeserializeException("The JSON payload is invalid");
+        }
+    }
+
+    /**
+     * Discards the cached copy of a document returned by a find and modify,
+     * or every cached document of the collection when the document or its
+     * identifier isn't known.
+     */
+    private void invalidateModified(String databaseName, String collectionName, Document document) {
+        if (document != null && document.get("_id") != null) {
+            invalidateDocument(databaseName, collectionName, document.get("_id").toString());
+        } else {
+            invalidateDocuments(databaseName, collectionName);
+        }
+    }
+
+    /**
+     * Applies the projection, skip, limit and sort order of a listing.
+     */
+    private static void applyOptions(FindIterable<?> iterable, Document projection,
+            int skip, int limit, Document orderBy) {
+        if (projection != null) {
+            iterable.projection(projection);
+        }
+        iterable.skip(skip);
+        iterable.limit(limit);
+        if (orderBy != null) {
+            iterable.sort(orderBy);
+        }
+    }
+
     /**
      * The form upload for documents could lead to invalid parameters being
      * passed in so this method performs a sanity check on the values
@@ -331,4 +1379,37 @@ public class DocumentDataServiceImpl extends AbstractDataService implements Docu
         }
         return true;
     }
+
+    /**
+     * A {@link DocumentCursor} serializing each {@link Document} to JSON as it
+     * is read from the underlying {@link MongoCursor}.
+     */
+    private static class SerializingCursor implements DocumentCursor {
+
+        private final MongoCursor<Document> cursor;
+
+        SerializingCursor(MongoCursor<Document> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return JSON.serialize(cursor.next());
+        }
+
+        @Override
+        public void writeNext(Writer writer) throws IOException {
+            writer.write(next());
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bananaforscale.cormac.exception.serialization.DeserializeException;
+import org.bson.BsonInvalidOperationException;
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the documents of a body into a collection while the body is still being read. Documents
+ * are collected into batches of a fixed size and each full batch is handed to an executor to be
+ * inserted while the next one is filled. At most a fixed number of batches are in flight; once
+ * they are all taken reading stops until one completes, so memory use depends on the batch size
+ * rather than on the size of the body. Batches are inserted unordered and may complete in any
+ * order.
+ */
+class DocumentImport {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentImport.class);
+
+    /**
+     * The number of rejections whose reason is kept, further rejections are only counted.
+     */
+    static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private final MongoCollection<Document> collection;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final InsertManyOptions options = new InsertManyOptions().ordered(false);
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final List<ImportResult.Rejection> rejections = new ArrayList<>();
+    private volatile String error;
+
+    /**
+     * @param collection the collection to insert into
+     * @param executor the executor inserting the batches, or {@code null} to insert each batch on
+     * the calling thread before reading on
+     * @param batchSize the number of documents per insertMany
+     * @param maxInFlight the maximum number of batches handed to the executor and not yet
+     * inserted
+     */
+    DocumentImport(final MongoCollection<Document> collection, final Executor executor,
+            final int batchSize, final int maxInFlight) {
+        this.collection = collection;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Reads and inserts all the documents of a body. Documents that can't be parsed or inserted
+     * are counted as rejected and the import goes on. Failing to read the body or to reach the
+     * datasource ends the import, and the documents of the batches not yet inserted are dropped.
+     *
+     * @param reader the body
+     * @return the counters of the import once every batch has completed
+     */
+    ImportResult run(final JsonDocumentReader reader) {
+        final long start = System.nanoTime();
+        List<Document> batch = new ArrayList<>(batchSize);
+        long[] indexes = new long[batchSize];
+        long[] lines = new long[batchSize];
+        try {
+            while (error == null) {
+                final String content;
+                try {
+                    content = reader.next();
+                } catch (DeserializeException ex) {
+                    reject(read.getAndIncrement(), reader.getLineNumber(), ex.getMessage());
+                    continue;
+                }
+                if (content == null) {
+                    break;
+                }
+                final long index = read.getAndIncrement();
+                final Document document;
+                try {
+                    document = Document.parse(content);
+                } catch (IllegalArgumentException | ClassCastException | JsonParseException | BsonInvalidOperationException ex) {
+                    reject(index, reader.getLineNumber(), "The JSON payload is invalid");
+                    continue;
+                }
+                indexes[batch.size()] = index;
+                lines[batch.size()] = reader.getLineNumber();
+                batch.add(document);
+                if (batch.size() == batchSize) {
+                    submit(batch, indexes, lines);
+                    batch = new ArrayList<>(batchSize);
+                    indexes = new long[batchSize];
+                    lines = new long[batchSize];
+                }
+            }
+            if (error == null && !batch.isEmpty()) {
+                submit(batch, indexes, lines);
+            }
+        } catch (IOException ex) {
+            logger.error("An error occured while reading the documents", ex);
+            fail("An error occured while reading the documents");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail("The import was interrupted");
+        } finally {
+            // every permit is back once the last batch has completed
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+        final List<ImportResult.Rejection> reported;
+        synchronized (rejections) {
+            reported = new ArrayList<>(rejections);
+        }
+        // batches complete in any order
+        Collections.sort(reported, new Comparator<ImportResult.Rejection>() {
+            @Override
+            public int compare(ImportResult.Rejection a, ImportResult.Rejection b) {
+                return Long.compare(a.getIndex(), b.getIndex());
+            }
+        });
+        return new ImportResult(read.get(), inserted.get(), rejected.get(), reported, error,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Hands a batch to the executor, waiting for a batch in flight to complete first if need be.
+     * The batch is inserted on the calling thread when there is no executor or it refuses the
+     * batch.
+     */
+    private void submit(final List<Document> batch, final long[] indexes, final long[] lines)
+            throws InterruptedException {
+        if (executor == null) {
+            insert(batch, indexes, lines);
+            return;
+        }
+        inFlight.acquire();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        insert(batch, indexes, lines);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            insert(batch, indexes, lines);
+        }
+    }
+
+    /**
+     * Inserts a batch, counting the documents inserted and rejecting those the server refused.
+     */
+    private void insert(final List<Document> batch, final long[] indexes, final long[] lines) {
+        if (error != null) {
+            return;
+        }
+        try {
+            collection.insertMany(batch, options);
+            inserted.addAndGet(batch.size());
+        } catch (MongoBulkWriteException ex) {
+            inserted.addAndGet(batch.size() - ex.getWriteErrors().size());
+            for (final BulkWriteError writeError : ex.getWriteErrors()) {
+                reject(indexes[writeError.getIndex()], lines[writeError.getIndex()], writeError.getMessage());
+            }
+        } catch (MongoException ex) {
+            logger.error("An error occured while adding the documents", ex);
+            fail("An error occured while adding the documents");
+        }
+    }
+
+    private void reject(final long index, final long line, final String reason) {
+        rejected.incrementAndGet();
+        synchronized (rejections) {
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add(new ImportResult.Rejection(index, line, reason));
+            }
+        }
+    }
+
+    private void fail(final String message) {
+        if (error == null) {
+            error = message;
+        }
+    }
+}
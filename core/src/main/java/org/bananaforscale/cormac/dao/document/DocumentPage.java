@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.List;
+
+/**
+ * Encapsulates a page of documents and the token to request the page that follows it.
+ */
+public class DocumentPage {
+
+    private final List<String> documents;
+    private final String continuationToken;
+
+    public DocumentPage(final List<String> documents, final String continuationToken) {
+        this.documents = documents;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<String> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the token for the next page, or {@code null} if this is the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentPage{" + "documents=" + documents.size()
+                + ", continuationToken=" + continuationToken + '}';
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.client.model.FindOneAndDeleteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+
+/**
+ * The options of a find and modify request, given as a JSON document with the fields
+ * {@code filter}, {@code sort} and {@code projection}, and for updates {@code update},
+ * {@code upsert} and {@code returnDocument}, which is either {@code "before"} or
+ * {@code "after"}. Only the update is required; an absent filter matches any document.
+ */
+class FindAndModify {
+
+    private final Document filter;
+    private final Document update;
+    private final Document sort;
+    private final Document projection;
+    private final boolean upsert;
+    private final ReturnDocument returnDocument;
+
+    private FindAndModify(final Document filter, final Document update, final Document sort,
+            final Document projection, final boolean upsert, final ReturnDocument returnDocument) {
+        this.filter = filter;
+        this.update = update;
+        this.sort = sort;
+        this.projection = projection;
+        this.upsert = upsert;
+        this.returnDocument = returnDocument;
+    }
+
+    /**
+     * Parses the options of a find and modify request.
+     *
+     * @param request the parsed request
+     * @param forUpdate whether the request updates the document rather than deleting it
+     * @return the options
+     * @throws IllegalArgumentException if a field has the wrong type, the update is missing or
+     * isn't made of update operators, or update options are given for a delete
+     */
+    static FindAndModify parse(final Document request, final boolean forUpdate)
+            throws IllegalArgumentException {
+        final Document filter = optional(request, "filter");
+        final Document sort = optional(request, "sort");
+        final Document projection = optional(request, "projection");
+        Document update = null;
+        boolean upsert = false;
+        ReturnDocument returnDocument = ReturnDocument.BEFORE;
+        if (forUpdate) {
+            update = optional(request, "update");
+            if (update == null) {
+                throw new IllegalArgumentException("The update is missing");
+            }
+            WriteOperation.requireOperators(update);
+            final Object upsertValue = request.get("upsert");
+            if (upsertValue != null && !(upsertValue instanceof Boolean)) {
+                throw new IllegalArgumentException("The upsert flag must be a boolean");
+            }
+            upsert = Boolean.TRUE.equals(upsertValue);
+            final Object returnValue = request.get("returnDocument");
+            if ("after".equals(returnValue)) {
+                returnDocument = ReturnDocument.AFTER;
+            } else if (returnValue != null && !"before".equals(returnValue)) {
+                throw new IllegalArgumentException("The returnDocument must be \"before\" or \"after\"");
+            }
+        } else if (request.containsKey("update") || request.containsKey("upsert")
+                || request.containsKey("returnDocument")) {
+            throw new IllegalArgumentException("A delete takes no update options");
+        }
+        return new FindAndModify(filter == null ? new Document() : filter, update, sort, projection,
+                upsert, returnDocument);
+    }
+
+    Document getFilter() {
+        return filter;
+    }
+
+    Document getUpdate() {
+        return update;
+    }
+
+    /**
+     * @return whether the request may insert a document, in which case no document is returned
+     * when nothing matched and the document before the update was asked for
+     */
+    boolean isUpsert() {
+        return upsert;
+    }
+
+    FindOneAndUpdateOptions toUpdateOptions() {
+        return new FindOneAndUpdateOptions().sort(sort).projection(projection)
+                .upsert(upsert).returnDocument(returnDocument);
+    }
+
+    FindOneAndDeleteOptions toDeleteOptions() {
+        return new FindOneAndDeleteOptions().sort(sort).projection(projection);
+    }
+
+    private static Document optional(final Document request, final String field) {
+        final Object value = request.get(field);
+        if (value != null && !(value instanceof Document)) {
+            throw new IllegalArgumentException("The " + field + " must be a document");
+        }
+        return (Document) value;
+    }
+}
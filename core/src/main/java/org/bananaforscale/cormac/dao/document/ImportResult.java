@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encapsulates the outcome of a streamed import: how many documents were read, inserted and
+ * rejected, the reasons of the first rejections, and the error that ended the import early, if
+ * any.
+ */
+public class ImportResult {
+
+    private final long read;
+    private final long inserted;
+    private final long rejected;
+    private final List<Rejection> rejections;
+    private final String error;
+    private final long elapsedMillis;
+
+    public ImportResult(final long read, final long inserted, final long rejected,
+            final List<Rejection> rejections, final String error, final long elapsedMillis) {
+        this.read = read;
+        this.inserted = inserted;
+        this.rejected = rejected;
+        this.rejections = Collections.unmodifiableList(rejections);
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the number of documents read from the body
+     */
+    public long getRead() {
+        return read;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the first rejections in the order of the body, there may be fewer entries than
+     * rejected documents
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return the error that ended the import before the whole body was read, or {@code null}
+     */
+    public String getError() {
+        return error;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" + "read=" + read + ", inserted=" + inserted
+                + ", rejected=" + rejected + ", error=" + error + '}';
+    }
+
+    /**
+     * A document that couldn't be imported.
+     */
+    public static class Rejection {
+
+        private final long index;
+        private final long line;
+        private final String reason;
+
+        /**
+         * @param index the position of the document in the body, counting from 0
+         * @param line the line of the body the document starts on, counting from 1
+         * @param reason the reason the document was rejected
+         */
+        public Rejection(final long index, final long line, final String reason) {
+            this.index = index;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Rejection{" + "index=" + index + ", line=" + line + ", reason=" + reason + '}';
+        }
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.bananaforscale.cormac.dao.ConcernPolicy;
+import org.bananaforscale.cormac.dao.NamespaceCache;
+import org.bananaforscale.cormac.dao.NamespaceFilter;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-behind queue for collections that don't need writes to be acknowledged synchronously,
+ * such as telemetry. Accepted documents are held in a bounded queue per collection and a single
+ * background thread inserts them with one unordered insertMany per batch, flushing a collection
+ * once a full batch is waiting or its oldest document has waited for the linger time. A document
+ * is only offered if its collection has room, so a datasource that falls behind pushes back on
+ * the clients instead of growing the heap.
+ * <p>
+ * Accepted documents are lost if the datasource rejects them or the application stops before they
+ * are flushed; both are counted, and {@link #close(long)} flushes what it can before stopping.
+ */
+public class IngestQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestQueue.class);
+
+    private final MongoClient mongoClient;
+    private final ConcernPolicy concernPolicy;
+    private final NamespaceCache namespaceCache;
+    private final NamespaceFilter filter;
+    private final int capacity;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final InsertManyOptions options = new InsertManyOptions().ordered(false);
+    private final ConcurrentMap<String, Pending> queues = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeup = lock.newCondition();
+    /**
+     * Held shared by offers and exclusively to close the queue, so that every accepted document
+     * is queued before the flusher sees the queue closed and makes its final pass.
+     */
+    private final ReentrantReadWriteLock admission = new ReentrantReadWriteLock();
+    private final Thread flusher;
+    private boolean batchReady;
+    private volatile boolean closed;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * @param mongoClient the client inserting the documents
+     * @param concernPolicy the default write concern of the collections
+     * @param namespaceCache the cache of names updated once a collection has been written to, may
+     * be {@code null}
+     * @param filter selects the collections accepting queued writes
+     * @param capacity the maximum number of documents waiting per collection
+     * @param batchSize the maximum number of documents per insertMany
+     * @param lingerMillis the time in milliseconds a document waits for a batch to fill up
+     */
+    public IngestQueue(final MongoClient mongoClient, final ConcernPolicy concernPolicy,
+            final NamespaceCache namespaceCache, final NamespaceFilter filter, final int capacity,
+            final int batchSize, final long lingerMillis) {
+        if (capacity < 1 || batchSize < 1 || lingerMillis < 1) {
+            throw new IllegalArgumentException("The capacity, batch size and linger time must be positive");
+        }
+        this.mongoClient = mongoClient;
+        this.concernPolicy = concernPolicy == null ? ConcernPolicy.parse(null) : concernPolicy;
+        this.namespaceCache = namespaceCache;
+        this.filter = filter;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "cormac-ingest-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Starts the thread flushing the queues.
+     */
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @return {@code true} if the collection accepts queued writes, otherwise {@code false}
+     */
+    public boolean accepts(final String databaseName, final String collectionName) {
+        return filter.matches(databaseName, collectionName);
+    }
+
+    /**
+     * Queues a document to be inserted. The document should already carry its identifier, as the
+     * client is told about it before the insert.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param document the document
+     * @return {@code true} if the document was queued, {@code false} if the queue of the collection
+     * is full or the queue is closed
+     */
+    public boolean offer(final String databaseName, final String collectionName, final Document document) {
+        final Pending pending;
+        admission.readLock().lock();
+        try {
+            if (closed) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            final String namespace = databaseName + "." + collectionName;
+            final Pending existing = queues.get(namespace);
+            if (existing == null) {
+                final Pending created = new Pending(databaseName, collectionName, capacity);
+                final Pending raced = queues.putIfAbsent(namespace, created);
+                pending = raced == null ? created : raced;
+            } else {
+                pending = existing;
+            }
+            if (!pending.entries.offer(new Entry(document, System.nanoTime()))) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            accepted.incrementAndGet();
+        } finally {
+            admission.readLock().unlock();
+        }
+        if (pending.entries.size() >= batchSize) {
+            signal();
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting documents and waits for the queued documents to be flushed.
+     *
+     * @param timeoutMillis the maximum time in milliseconds to wait
+     * @return the number of documents left unflushed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int close(final long timeoutMillis) throws InterruptedException {
+        markClosed();
+        signal();
+        if (flusher.isAlive()) {
+            flusher.join(timeoutMillis);
+        }
+        return getDepth();
+    }
+
+    /**
+     * @return the number of documents waiting to be inserted
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (final Pending pending : queues.values()) {
+            depth += pending.entries.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the maximum number of documents waiting per collection
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of documents accepted
+     */
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the number of documents turned away because their queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of documents inserted
+     */
+    public long getInsertedCount() {
+        return inserted.get();
+    }
+
+    /**
+     * @return the number of accepted documents the datasource failed to insert
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of batches flushed
+     */
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    /**
+     * @return the average time in milliseconds taken to insert a batch
+     */
+    public double getAverageFlushMillis() {
+        final long count = flushes.get();
+        return count == 0 ? 0 : flushNanos.get() / (count * 1000000.0);
+    }
+
+    /**
+     * @return the longest time in milliseconds taken to insert a batch
+     */
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Inserts a batch of documents.
+     *
+     * @param databaseName the name of the database
+     * @param collectionName the name of the collection
+     * @param batch the documents
+     * @return the number of documents inserted
+     * @throws MongoException if the batch couldn't be inserted at all
+     */
+    int insert(final String databaseName, final String collectionName, final List<Document> batch) {
+        MongoCollection<Document> collection = mongoClient.getDatabase(databaseName).getCollection(collectionName);
+        collection = concernPolicy.forNamespace(databaseName, collectionName).apply(collection);
+        try {
+            collection.insertMany(batch, options);
+            return batch.size();
+        } catch (MongoBulkWriteException ex) {
+            logger.error("Documents queued for " + databaseName + "." + collectionName
+                    + " were rejected: " + ex.getWriteErrors());
+            return batch.size() - ex.getWriteErrors().size();
+        }
+    }
+
+    private void markClosed() {
+        admission.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            admission.writeLock().unlock();
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            batchReady = true;
+            wakeup.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                if (!batchReady && !closed) {
+                    wakeup.await(lingerMillis, TimeUnit.MILLISECONDS);
+                }
+                batchReady = false;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            } finally {
+                lock.unlock();
+            }
+            if (interrupted) {
+                markClosed();
+            }
+            final boolean closing = closed;
+            for (final Pending pending : queues.values()) {
+                flush(pending, closing);
+            }
+            if (closing) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts the due batches of a collection: every full batch, and the rest as well if the
+     * oldest document has waited for the linger time or everything is to be flushed. Documents
+     * arriving meanwhile are left for the next pass, so a busy collection can't hold up the
+     * others.
+     */
+    private void flush(final Pending pending, final boolean all) {
+        final long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        final List<Entry> entries = new ArrayList<>(batchSize);
+        final List<Document> batch = new ArrayList<>(batchSize);
+        for (int rounds = pending.entries.size() / batchSize + 1; rounds > 0; rounds--) {
+            final Entry oldest = pending.entries.peek();
+            if (oldest == null) {
+                return;
+            }
+            if (!all && pending.entries.size() < batchSize
+                    && System.nanoTime() - oldest.enqueuedNanos < lingerNanos) {
+                return;
+            }
+            entries.clear();
+            batch.clear();
+            pending.entries.drainTo(entries, batchSize);
+            for (final Entry entry : entries) {
+                batch.add(entry.document);
+            }
+            final long start = System.nanoTime();
+            int count;
+            try {
+                count = insert(pending.databaseName, pending.collectionName, batch);
+            } catch (MongoException | IllegalArgumentException ex) {
+                logger.error("An error occured while flushing documents queued for "
+                        + pending.databaseName + "." + pending.collectionName, ex);
+                count = 0;
+            }
+            final long elapsed = System.nanoTime() - start;
+            flushes.incrementAndGet();
+            flushNanos.addAndGet(elapsed);
+            long max = maxFlushNanos.get();
+            while (elapsed > max && !maxFlushNanos.compareAndSet(max, elapsed)) {
+                max = maxFlushNanos.get();
+            }
+            inserted.addAndGet(count);
+            failed.addAndGet(batch.size() - count);
+            if (count > 0 && namespaceCache != null) {
+                namespaceCache.ensureCollection(pending.databaseName, pending.collectionName);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IngestQueue{" + "capacity=" + capacity + ", batchSize=" + batchSize
+                + ", lingerMillis=" + lingerMillis + ", depth=" + getDepth() + '}';
+    }
+
+    /**
+     * The documents waiting to be inserted into one collection.
+     */
+    private static class Pending {
+
+        private final String databaseName;
+        private final String collectionName;
+        private final BlockingQueue<Entry> entries;
+
+        Pending(final String databaseName, final String collectionName, final int capacity) {
+            this.databaseName = databaseName;
+            this.collectionName = collectionName;
+            this.entries = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    /**
+     * A queued document and the time it was accepted.
+     */
+    private static class Entry {
+
+        private final Document document;
+        private final long enqueuedNanos;
+
+        Entry(final Document document, final long enqueuedNanos) {
+            this.document = document;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.bananaforscale.cormac.exception.serialization.DeserializeException;
+
+/**
+ * Splits a body of several JSON documents into the text of the individual documents, one at a
+ * time. The body is either a JSON array of documents or newline delimited JSON with one document
+ * per line, told apart by its first character. The documents themselves are not parsed, so a
+ * malformed document can be rejected on its own without losing the rest of the body.
+ */
+public class JsonDocumentReader implements Closeable {
+
+    /**
+     * A maximum length in characters matching the largest document MongoDB stores.
+     */
+    public static final int MAX_DOCUMENT_LENGTH = 16 * 1024 * 1024;
+
+    private final BufferedReader reader;
+    private final int maxLength;
+    private Boolean array;
+    private boolean finished;
+    private boolean elementRead;
+    private long line = 1;
+    private long documentLine;
+
+    /**
+     * @param reader the body to read
+     */
+    public JsonDocumentReader(final Reader reader) {
+        this(reader, 0);
+    }
+
+    /**
+     * @param reader the body to read
+     * @param maxLength the maximum number of characters of a document, or 0 for no limit
+     */
+    public JsonDocumentReader(final Reader reader, final int maxLength) {
+        this.reader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Reads the next document.
+     *
+     * @return the text of the next document, or {@code null} once the body is exhausted
+     * @throws IOException if the body can't be read
+     * @throws DeserializeException if a JSON array body isn't a well formed array or a document
+     * is longer than the maximum length. Reading can go on after an overlong line of a newline
+     * delimited body, while a JSON array body is exhausted after any error.
+     */
+    public String next() throws IOException, DeserializeException {
+        if (finished) {
+            return null;
+        }
+        if (array == null) {
+            int c = skipWhitespace();
+            if (c == -1) {
+                finished = true;
+                return null;
+            }
+            array = c == '[';
+            if (!array) {
+                reader.reset();
+            }
+        }
+        return array ? nextElement() : nextLine();
+    }
+
+    /**
+     * @return the line of the body on which the document last read starts, counting from 1
+     */
+    public long getLineNumber() {
+        return documentLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next non blank line of a newline delimited body. The rest of an overlong line is
+     * skipped so that reading can go on with the next line.
+     */
+    private String nextLine() throws IOException, DeserializeException {
+        final StringBuilder sb = new StringBuilder();
+        while (true) {
+            documentLine = line;
+            sb.setLength(0);
+            boolean overlong = false;
+            int c = reader.read();
+            if (c == -1) {
+                finished = true;
+                return null;
+            }
+            while (c != -1 && c != '\n') {
+                if (maxLength > 0 && sb.length() >= maxLength) {
+                    overlong = true;
+                } else {
+                    sb.append((char) c);
+                }
+                c = reader.read();
+            }
+            if (c == '\n') {
+                line++;
+            }
+            if (overlong) {
+                throw new DeserializeException("The document exceeds the maximum length");
+            }
+            final String text = sb.toString().trim();
+            if (!text.isEmpty()) {
+                return text;
+            }
+        }
+    }
+
+    /**
+     * Reads the next element of a JSON array body up to the comma or closing bracket that ends
+     * it, tracking nesting and strings so that neither ends an element early. Only whitespace may
+     * follow the closing bracket, so that a concatenated body isn't taken for a complete one.
+     */
+    private String nextElement() throws IOException, DeserializeException {
+        final StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int c = skipWhitespace();
+        documentLine = line;
+        while (true) {
+            if (c == -1) {
+                finished = true;
+                throw new DeserializeException("The JSON array is not terminated");
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    if (c == '}') {
+                        finished = true;
+                        throw new DeserializeException("The JSON array is not well formed");
+                    }
+                    finished = true;
+                    if (skipWhitespace() != -1) {
+                        throw new DeserializeException("The JSON array is followed by other content");
+                    }
+                    break;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                break;
+            }
+            if (maxLength > 0 && sb.length() >= maxLength) {
+                finished = true;
+                throw new DeserializeException("The document exceeds the maximum length");
+            }
+            if (c == '\n') {
+                line++;
+            }
+            sb.append((char) c);
+            c = reader.read();
+        }
+        final String element = sb.toString().trim();
+        if (element.isEmpty()) {
+            if (finished && !elementRead) {
+                return null;
+            }
+            finished = true;
+            throw new DeserializeException("The JSON array contains an empty element");
+        }
+        elementRead = true;
+        return element;
+    }
+
+    /**
+     * Skips whitespace, leaving the reader marked before the first other character.
+     *
+     * @return the first character that isn't whitespace, or -1 at the end of the body
+     */
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            reader.mark(1);
+            c = reader.read();
+            if (c == '\n') {
+                line++;
+            }
+        } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+        return c;
+    }
+}
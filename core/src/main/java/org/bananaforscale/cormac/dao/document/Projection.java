@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.bson.Document;
+
+/**
+ * The set of fields to return from a query, applied by the server so that unwanted fields never
+ * leave the database. Fields are given as a comma separated list of dotted paths. A path prefixed
+ * with {@code -} is excluded, otherwise it is included. The form {@code path:1} and
+ * {@code path:0} is accepted as well. As in MongoDB, inclusions and exclusions cannot be mixed;
+ * {@code _id} is controlled separately.
+ */
+public class Projection {
+
+    private final Set<String> paths;
+    private final boolean inclusive;
+    private final boolean includeId;
+    private final List<Retained> retained;
+
+    private Projection(final Set<String> paths, final boolean inclusive, final boolean includeId,
+            final List<Retained> retained) {
+        this.paths = paths;
+        this.inclusive = inclusive;
+        this.includeId = includeId;
+        this.retained = retained;
+    }
+
+    /**
+     * Parses the fields parameter of a query.
+     *
+     * @param fields the comma separated field paths, may be {@code null}
+     * @param includeId determines whether to include the Mongo "_id" field
+     * @return the projection
+     * @throws IllegalArgumentException if inclusions and exclusions are mixed
+     */
+    public static Projection parse(final String fields, final boolean includeId)
+            throws IllegalArgumentException {
+        final Set<String> paths = new LinkedHashSet<>();
+        Boolean inclusive = null;
+        if (fields != null) {
+            for (final String item : fields.split(",")) {
+                String path = item.trim();
+                boolean include = true;
+                if (path.startsWith("-")) {
+                    path = path.substring(1).trim();
+                    include = false;
+                } else if (path.contains(":")) {
+                    final String value = path.substring(path.indexOf(':') + 1).trim();
+                    path = path.substring(0, path.indexOf(':')).trim();
+                    include = !("0".equals(value) || "false".equalsIgnoreCase(value));
+                }
+                if (path.isEmpty() || "_id".equals(path)) {
+                    continue;
+                }
+                if (inclusive != null && inclusive != include) {
+                    throw new IllegalArgumentException(
+                            "The fields cannot both include and exclude fields");
+                }
+                inclusive = include;
+                paths.add(path);
+            }
+        }
+        return new Projection(paths, inclusive == null || inclusive, includeId,
+                Collections.<Retained>emptyList());
+    }
+
+    /**
+     * Builds the projection document to send to the server.
+     *
+     * @return the projection, or {@code null} if all fields are returned
+     */
+    public Document toDocument() {
+        if (paths.isEmpty() && includeId) {
+            return null;
+        }
+        final Document projection = new Document();
+        for (final String path : paths) {
+            projection.append(path, inclusive ? 1 : 0);
+        }
+        if (!includeId) {
+            projection.append("_id", 0);
+        }
+        return projection;
+    }
+
+    /**
+     * Derives a projection that also returns the given paths, for example the fields needed to
+     * build a continuation token. Paths that the original projection would not have returned are
+     * remembered so that {@link #removeRetained(Document)} can strip them again. A required path
+     * enclosing included paths replaces them, as the server refuses a projection of both, and
+     * only the fields of the enclosing path that weren't included are stripped afterwards.
+     *
+     * @param required the paths that must be returned, {@code null} entries are ignored
+     * @return the derived projection
+     */
+    public Projection retain(final String... required) {
+        final Set<String> newPaths = new LinkedHashSet<>(paths);
+        final List<Retained> newRetained = new ArrayList<>(retained);
+        boolean newIncludeId = includeId;
+        for (final String path : required) {
+            if (path == null) {
+                continue;
+            }
+            if ("_id".equals(path)) {
+                if (!newIncludeId) {
+                    newIncludeId = true;
+                    newRetained.add(new Retained(path, Collections.<String>emptySet()));
+                }
+            } else if (inclusive && !newPaths.isEmpty() && !covers(newPaths, path)) {
+                final Set<String> kept = new LinkedHashSet<>();
+                for (final String included : new ArrayList<>(newPaths)) {
+                    if (included.startsWith(path + ".")) {
+                        newPaths.remove(included);
+                        kept.add(included.substring(path.length() + 1));
+                    }
+                }
+                newPaths.add(path);
+                newRetained.add(new Retained(path, kept));
+            } else if (!inclusive) {
+                for (final String excluded : new ArrayList<>(newPaths)) {
+                    if (path.equals(excluded) || path.startsWith(excluded + ".")
+                            || excluded.startsWith(path + ".")) {
+                        newPaths.remove(excluded);
+                        newRetained.add(new Retained(excluded, Collections.<String>emptySet()));
+                    }
+                }
+            }
+        }
+        return new Projection(newPaths, inclusive, newIncludeId, newRetained);
+    }
+
+    /**
+     * Removes the paths added by {@link #retain(String...)} from a returned document.
+     *
+     * @param document the document as returned by the server
+     */
+    public void removeRetained(final Document document) {
+        for (final Retained path : retained) {
+            if (path.kept.isEmpty()) {
+                removePath(document, path.path);
+            } else {
+                removeExcept(document, path.path, path.kept);
+            }
+        }
+    }
+
+    private static boolean covers(final Set<String> included, final String path) {
+        for (final String candidate : included) {
+            if (path.equals(candidate) || path.startsWith(candidate + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removePath(final Document document, final String path) {
+        final int dot = path.indexOf('.');
+        if (dot < 0) {
+            document.remove(path);
+            return;
+        }
+        final String parent = path.substring(0, dot);
+        final Object child = document.get(parent);
+        if (child instanceof Document) {
+            removePath((Document) child, path.substring(dot + 1));
+            if (((Document) child).isEmpty()) {
+                document.remove(parent);
+            }
+        }
+    }
+
+    /**
+     * Strips the fields of a path except the given relative paths, as the server would have
+     * returned them for an inclusion of those paths only.
+     */
+    private static void removeExcept(final Document document, final String path, final Set<String> kept) {
+        final int dot = path.indexOf('.');
+        final String field = dot < 0 ? path : path.substring(0, dot);
+        final Object child = document.get(field);
+        if (dot >= 0) {
+            if (child instanceof Document) {
+                removeExcept((Document) child, path.substring(dot + 1), kept);
+            }
+            return;
+        }
+        if (child instanceof Document) {
+            retainOnly((Document) child, kept);
+        } else if (child instanceof List) {
+            final List<?> elements = (List<?>) child;
+            final List<Object> projected = new ArrayList<>(elements.size());
+            for (final Object element : elements) {
+                if (element instanceof Document) {
+                    retainOnly((Document) element, kept);
+                    projected.add(element);
+                }
+            }
+            document.put(field, projected);
+        } else if (document.containsKey(field)) {
+            document.remove(field);
+        }
+    }
+
+    private static void retainOnly(final Document document, final Set<String> kept) {
+        for (final String key : new ArrayList<>(document.keySet())) {
+            final Set<String> nested = new LinkedHashSet<>();
+            boolean whole = false;
+            for (final String path : kept) {
+                if (path.equals(key)) {
+                    whole = true;
+                } else if (path.startsWith(key + ".")) {
+                    nested.add(path.substring(key.length() + 1));
+                }
+            }
+            if (whole) {
+                continue;
+            }
+            if (nested.isEmpty()) {
+                document.remove(key);
+            } else {
+                removeExcept(document, key, nested);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Projection{" + "paths=" + paths + ", inclusive=" + inclusive
+                + ", includeId=" + includeId + '}';
+    }
+
+    /**
+     * A path added to the projection, with the paths beneath it that were requested anyway.
+     */
+    private static final class Retained {
+
+        private final String path;
+        private final Set<String> kept;
+
+        private Retained(final String path, final Set<String> kept) {
+            this.path = path;
+            this.kept = kept;
+        }
+    }
+}
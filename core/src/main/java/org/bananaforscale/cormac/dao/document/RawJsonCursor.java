@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.client.MongoCursor;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import org.bson.BSONException;
+import org.bson.BsonBinaryReader;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * A {@link DocumentCursor} over documents fetched as {@link RawBsonDocument}. The BSON bytes
+ * returned by the server are transcoded straight to JSON on the output writer without building
+ * a {@link org.bson.Document} or an intermediate string for each document.
+ * <p>
+ * The output is MongoDB strict mode extended JSON adjusted to match the legacy serializer where
+ * possible: dates are written as ISO-8601 strings and 64 bit integers that fit into 32 bits as
+ * plain numbers. Larger 64 bit integers are written as {@code {"$numberLong": "..."}} rather than
+ * as numbers that JavaScript clients can't represent exactly.
+ */
+class RawJsonCursor implements DocumentCursor {
+
+    private static final JsonWriterSettings SETTINGS = new JsonWriterSettings(JsonMode.STRICT);
+
+    private final MongoCursor<RawBsonDocument> cursor;
+    private final SimpleDateFormat dateFormat = createDateFormat();
+
+    RawJsonCursor(final MongoCursor<RawBsonDocument> cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    @Override
+    public String next() {
+        final StringWriter writer = new StringWriter();
+        write(cursor.next(), writer, dateFormat);
+        return writer.toString();
+    }
+
+    @Override
+    public void writeNext(final Writer writer) throws IOException {
+        try {
+            write(cursor.next(), writer, dateFormat);
+        } catch (BSONException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+
+    /**
+     * Transcodes a raw document to JSON.
+     *
+     * @param document the raw document
+     * @param writer the writer receiving the JSON
+     * @param dateFormat the format used for dates, confined to the calling thread
+     */
+    static void write(final RawBsonDocument document, final Writer writer,
+            final SimpleDateFormat dateFormat) {
+        final BsonBinaryReader reader = new BsonBinaryReader(document.getByteBuffer().asNIO());
+        try {
+            new LegacyJsonWriter(writer, dateFormat).pipe(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the date format used by the legacy serializer
+     */
+    static SimpleDateFormat createDateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    /**
+     * A {@link JsonWriter} writing dates and 64 bit integers the way the legacy serializer does.
+     */
+    private static final class LegacyJsonWriter extends JsonWriter {
+
+        private final SimpleDateFormat dateFormat;
+
+        private LegacyJsonWriter(final Writer writer, final SimpleDateFormat dateFormat) {
+            super(writer, SETTINGS);
+            this.dateFormat = dateFormat;
+        }
+
+        @Override
+        protected void doWriteDateTime(final long value) {
+            writeStartDocument();
+            writeString("$date", dateFormat.format(new Date(value)));
+            writeEndDocument();
+        }
+
+        @Override
+        protected void doWriteInt64(final long value) {
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                doWriteInt32((int) value);
+            } else {
+                super.doWriteInt64(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonInvalidOperationException;
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+
+/**
+ * A single operation of a bulk write, given in the form of the MongoDB shell, such as
+ * {@code {"updateOne": {"filter": {...}, "update": {"$set": {...}}, "upsert": true}}}. The
+ * operations are insertOne with a document; replaceOne with a filter, a replacement and an
+ * optional upsert flag; updateOne and updateMany with a filter, an update made of update
+ * operators and an optional upsert flag; and deleteOne and deleteMany with a filter.
+ */
+class WriteOperation {
+
+    static final String INSERT_ONE = "insertOne";
+    static final String REPLACE_ONE = "replaceOne";
+    static final String UPDATE_ONE = "updateOne";
+    static final String UPDATE_MANY = "updateMany";
+    static final String DELETE_ONE = "deleteOne";
+    static final String DELETE_MANY = "deleteMany";
+
+    private final String type;
+    private final WriteModel<Document> model;
+    private final Document document;
+
+    private WriteOperation(final String type, final WriteModel<Document> model,
+            final Document document) {
+        this.type = type;
+        this.model = model;
+        this.document = document;
+    }
+
+    /**
+     * Parses an operation.
+     *
+     * @param content the operation as JSON
+     * @return the operation
+     * @throws IllegalArgumentException if the operation is malformed
+     */
+    static WriteOperation parse(final String content) throws IllegalArgumentException {
+        final Document operation;
+        try {
+            operation = Document.parse(content);
+        } catch (ClassCastException | JsonParseException | BsonInvalidOperationException ex) {
+            throw new IllegalArgumentException("The operation is not a JSON document");
+        }
+        if (operation.size() != 1) {
+            throw new IllegalArgumentException("The operation must have a single field naming it");
+        }
+        final String type = operation.keySet().iterator().next();
+        if (!(operation.get(type) instanceof Document)) {
+            throw new IllegalArgumentException("The " + type + " operation must be a document");
+        }
+        final Document body = (Document) operation.get(type);
+        switch (type) {
+            case INSERT_ONE:
+                final Document document = required(type, body, "document");
+                return new WriteOperation(type, new InsertOneModel<Document>(document), document);
+            case REPLACE_ONE:
+                final Document replacement = required(type, body, "replacement");
+                for (final String key : replacement.keySet()) {
+                    if (key.startsWith("$")) {
+                        throw new IllegalArgumentException("The replacement cannot contain update operators");
+                    }
+                }
+                return new WriteOperation(type, new ReplaceOneModel<Document>(required(type, body, "filter"),
+                        replacement, upsert(type, body)), null);
+            case UPDATE_ONE:
+            case UPDATE_MANY:
+                final Document update = requireOperators(required(type, body, "update"));
+                final Document filter = required(type, body, "filter");
+                return new WriteOperation(type, UPDATE_ONE.equals(type)
+                        ? new UpdateOneModel<Document>(filter, update, upsert(type, body))
+                        : new UpdateManyModel<Document>(filter, update, upsert(type, body)), null);
+            case DELETE_ONE:
+                return new WriteOperation(type, new DeleteOneModel<Document>(required(type, body, "filter")), null);
+            case DELETE_MANY:
+                return new WriteOperation(type, new DeleteManyModel<Document>(required(type, body, "filter")), null);
+            default:
+                throw new IllegalArgumentException("The operation " + type + " is not supported");
+        }
+    }
+
+    /**
+     * @return the name of the operation, such as "insertOne"
+     */
+    String getType() {
+        return type;
+    }
+
+    WriteModel<Document> getModel() {
+        return model;
+    }
+
+    /**
+     * @return the identifier of the document of an insertOne once written, otherwise
+     * {@code null}
+     */
+    String getInsertedId() {
+        return document == null || document.get("_id") == null ? null : document.get("_id").toString();
+    }
+
+    /**
+     * Verifies that an update is made of update operators only, such as {@code $set}, so that it
+     * can't be mistaken for a replacement.
+     *
+     * @param update the update
+     * @return the update
+     * @throws IllegalArgumentException if the update is empty or has a field that isn't an
+     * operator
+     */
+    static Document requireOperators(final Document update) throws IllegalArgumentException {
+        if (update.isEmpty()) {
+            throw new IllegalArgumentException("The update must contain update operators");
+        }
+        for (final String key : update.keySet()) {
+            if (!key.startsWith("$")) {
+                throw new IllegalArgumentException("The update must only contain update operators");
+            }
+        }
+        return update;
+    }
+
+    private static Document required(final String type, final Document body, final String field) {
+        if (!(body.get(field) instanceof Document)) {
+            throw new IllegalArgumentException("The " + type + " operation requires a " + field + " document");
+        }
+        return (Document) body.get(field);
+    }
+
+    private static UpdateOptions upsert(final String type, final Document body) {
+        final Object upsert = body.get("upsert");
+        if (upsert != null && !(upsert instanceof Boolean)) {
+            throw new IllegalArgumentException("The upsert flag of the " + type + " operation must be a boolean");
+        }
+        return new UpdateOptions().upsert(Boolean.TRUE.equals(upsert));
+    }
+}
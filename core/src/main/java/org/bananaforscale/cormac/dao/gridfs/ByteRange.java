@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.gridfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An inclusive range of bytes within a file as requested with the HTTP {@code Range} header.
+ */
+public class ByteRange {
+
+    private final long start;
+    private final long end;
+
+    /**
+     * @param start the offset of the first byte
+     * @param end the offset of the last byte, inclusive
+     */
+    public ByteRange(final long start, final long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a {@code Range} header value such as {@code bytes=0-499,1000-,-500} against a file
+     * of the given length. Ranges reaching past the end of the file are shortened and ranges
+     * starting beyond it are dropped.
+     *
+     * @param header the header value
+     * @param length the length of the file
+     * @return the satisfiable ranges in the requested order, empty if none of the ranges can be
+     * satisfied, or {@code null} if the header is malformed and should be ignored
+     */
+    public static List<ByteRange> parse(final String header, final long length) {
+        if (header == null || !header.trim().startsWith("bytes=")) {
+            return null;
+        }
+        final List<ByteRange> ranges = new ArrayList<>();
+        final String spec = header.trim().substring("bytes=".length());
+        for (final String item : spec.split(",")) {
+            final String range = item.trim();
+            final int dash = range.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            final long first;
+            final long last;
+            try {
+                if (dash == 0) {
+                    final long suffix = Long.parseLong(range.substring(1));
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(range.substring(0, dash));
+                    if (dash == range.length() - 1) {
+                        last = length - 1;
+                    } else {
+                        final long requestedLast = Long.parseLong(range.substring(dash + 1));
+                        if (requestedLast < first) {
+                            return null;
+                        }
+                        last = Math.min(requestedLast, length - 1);
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            if (first < 0) {
+                return null;
+            }
+            if (first < length && first <= last) {
+                ranges.add(new ByteRange(first, last));
+            }
+        }
+        return Collections.unmodifiableList(ranges);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of bytes in the range
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param total the length of the file
+     * @return the value of the {@code Content-Range} header for this range
+     */
+    public String toContentRange(final long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" + "start=" + start + ", end=" + end + '}';
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.gridfs;
+
+import com.mongodb.DBObject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Reads a range of bytes of a GridFS file from the chunks overlapping it. The chunks are supplied
+ * in ascending order of their index, starting with the chunk containing the first byte, so no
+ * chunk before the range is ever fetched.
+ */
+class ChunkInputStream extends InputStream {
+
+    private final Iterator<DBObject> chunks;
+    private final Closeable source;
+    private final long chunkSize;
+    private final long end;
+    private long position;
+    private byte[] data;
+    private int offset;
+
+    /**
+     * @param chunks the chunks overlapping the range in ascending order
+     * @param source the source of the chunks, closed with the stream
+     * @param chunkSize the chunk size of the file
+     * @param start the offset of the first byte to read
+     * @param end the offset of the last byte to read, inclusive
+     */
+    ChunkInputStream(final Iterator<DBObject> chunks, final Closeable source,
+            final long chunkSize, final long start, final long end) {
+        this.chunks = chunks;
+        this.source = source;
+        this.chunkSize = chunkSize;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position > end) {
+            return -1;
+        }
+        while (data == null || offset >= data.length) {
+            if (!chunks.hasNext()) {
+                throw new IOException("The file is missing the chunk at offset " + position);
+            }
+            final DBObject chunk = chunks.next();
+            final long chunkStart = ((Number) chunk.get("n")).longValue() * chunkSize;
+            data = (byte[]) chunk.get("data");
+            if (chunkStart > position || data == null) {
+                throw new IOException("The file is missing the chunk at offset " + position);
+            }
+            offset = (int) (position - chunkStart);
+        }
+        final int count = (int) Math.min(Math.min(len, data.length - offset), end - position + 1);
+        System.arraycopy(data, offset, buffer, off, count);
+        offset += count;
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
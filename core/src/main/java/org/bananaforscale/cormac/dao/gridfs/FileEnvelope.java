@@ -15,23 +15,46 @@
  */
 package org.bananaforscale.cormac.dao.gridfs;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
 /**
- * Encapsulates the file byte array, content type, and name.
+ * Encapsulates the file content, content type, and name along with the length, MD5 checksum, and
+ * upload date stored by GridFS. The content is read lazily from the datasource as the stream is
+ * consumed, so files of any size can be served without holding them in memory. The envelope must
+ * be closed once the content has been read or is no longer needed.
  */
-public class FileEnvelope {
+public class FileEnvelope implements Closeable {
 
-    private final byte[] bytes;
+    private final InputStream inputStream;
     private final String contentType;
     private final String name;
+    private final long length;
+    private final String md5;
+    private final Date uploadDate;
+    private final Object id;
+    private final long chunkSize;
 
-    public FileEnvelope(final byte[] bytes, final String contentType, final String name) {
-        this.bytes = bytes;
+    public FileEnvelope(final InputStream inputStream, final String contentType, final String name,
+            final long length, final String md5, final Date uploadDate, final Object id,
+            final long chunkSize) {
+        this.inputStream = inputStream;
         this.contentType = contentType;
         this.name = name;
+        this.length = length;
+        this.md5 = md5;
+        this.uploadDate = uploadDate == null ? null : new Date(uploadDate.getTime());
+        this.id = id;
+        this.chunkSize = chunkSize;
     }
 
-    public byte[] getBytes() {
-        return bytes;
+    /**
+     * @return the stream over the file content, fetching chunks from the datasource as it is read
+     */
+    public InputStream getInputStream() {
+        return inputStream;
     }
 
     public String getContentType() {
@@ -42,9 +65,50 @@ public class FileEnvelope {
         return name;
     }
 
+    /**
+     * @return the length of the file in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the MD5 checksum of the file as computed by GridFS, or {@code null} if unknown
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return the date the file was stored, or {@code null} if unknown
+     */
+    public Date getUploadDate() {
+        return uploadDate == null ? null : new Date(uploadDate.getTime());
+    }
+
+    /**
+     * @return the identifier of the file, referenced by its chunks
+     */
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * @return the size in bytes of each chunk of the file except the last
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
     @Override
     public String toString() {
-        return "FileEnvelope{" + "contentType=" + contentType + ", name=" + name + '}';
+        return "FileEnvelope{" + "contentType=" + contentType + ", name=" + name
+                + ", length=" + length + ", md5=" + md5 + ", uploadDate=" + uploadDate + '}';
     }
 
 }
@@ -53,6 +53,9 @@ public interface GridFsDataService {
     String updateByFileName(String databaseName, String bucketName, String fileName, InputStream inputStream)
             throws DatasourceException, NotFoundException;
 
+    InputStream getRange(String databaseName, String bucketName, FileEnvelope file, ByteRange range)
+            throws DatasourceException;
+
     FileEnvelope getByFileName(String databaseName, String bucketName, String fileName)
             throws DatasourceException, IOException, NotFoundException;
 
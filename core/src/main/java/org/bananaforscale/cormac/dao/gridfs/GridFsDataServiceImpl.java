@@ -15,6 +15,7 @@
  */
 package org.bananaforscale.cormac.dao.gridfs;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -25,7 +26,6 @@ import com.mongodb.gridfs.GridFS;
 import com.mongodb.gridfs.GridFSDBFile;
 import com.mongodb.gridfs.GridFSInputFile;
 import com.mongodb.util.JSON;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import org.apache.tika.Tika;
 import org.bananaforscale.cormac.dao.AbstractDataService;
+import org.bananaforscale.cormac.dao.NamespaceCache;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.ExistsException;
 import org.bananaforscale.cormac.exception.datasource.NotFoundException;
@@ -53,6 +54,10 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
         super(mongoClient);
     }
 
+    public GridFsDataServiceImpl(MongoClient mongoClient, NamespaceCache namespaceCache) {
+        super(mongoClient, namespaceCache);
+    }
+
     /**
      * Returns the names of all buckets in this database.
      *
@@ -98,6 +103,7 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             new GridFS(mongoDatabase, bucketName);
+            invalidateNamespaces(databaseName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while adding a bucket", ex);
@@ -118,17 +124,13 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
     public boolean removeBucket(String databaseName, String bucketName)
             throws DatasourceException, NotFoundException {
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
-            }
-            if (!bucketExists(databaseName, bucketName)) {
-                throw new NotFoundException("The bucket doesn't exist in the database");
-            }
+            requireBucket(databaseName, bucketName);
             MongoDatabase mongoDatabase = mongoClient.getDatabase(databaseName);
             String chunks = bucketName + ".chunks";
             String files = bucketName + ".files";
             mongoDatabase.getCollection(chunks).drop();
             mongoDatabase.getCollection(files).drop();
+            invalidateNamespaces(databaseName);
             return true;
         } catch (MongoException ex) {
             logger.error("An error occured while deleting a bucket", ex);
@@ -150,12 +152,7 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
     public List<String> getAll(String databaseName, String bucketName)
             throws DatasourceException, NotFoundException {
         try {
-            if (!databaseExists(databaseName)) {
-                throw new NotFoundException("The database doesn't exist in the datasource");
-            }
-            if (!bucketExists(databaseName, bucketName)) {
-                throw new NotFoundException("The bucket doesn't exist in the database");
-            }
+            requireBucket(databaseName, bucketName);
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName);
             DBCursor cursor = gfsBucket.getFileList();
@@ -191,6 +188,8 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName); // TODO: determine behavior if bucket doesnt exist
+            applyConcernDefaults(gfsBucket.getFilesCollection(), databaseName, bucketName + ".files");
+            applyConcernDefaults(gfsBucket.getChunksCollection(), databaseName, bucketName + ".chunks");
             DBCursor cursor = gfsBucket.getFileList();
             Iterator<DBObject> curIter = cursor.iterator();
             while (curIter.hasNext()) {
@@ -230,6 +229,8 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName);
+            applyConcernDefaults(gfsBucket.getFilesCollection(), databaseName, bucketName + ".files");
+            applyConcernDefaults(gfsBucket.getChunksCollection(), databaseName, bucketName + ".chunks");
             GridFSDBFile gfsFile = gfsBucket.findOne(fileName);
             if (gfsFile == null) {
                 // the file does not exist -- create
@@ -250,6 +251,7 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
                     throw new ExistsException("The file already exists in the bucket");
                 }
             }
+            ensureBucket(databaseName, bucketName);
         } catch (MongoException ex) {
             logger.error("Could not persist entity to bucket", ex);
             throw new DatasourceException("Could not persist file to bucket");
@@ -282,12 +284,15 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName);
+            applyConcernDefaults(gfsBucket.getFilesCollection(), databaseName, bucketName + ".files");
+            applyConcernDefaults(gfsBucket.getChunksCollection(), databaseName, bucketName + ".chunks");
             if (gfsBucket.findOne(fileName) != null) {
                 throw new ExistsException("The file already exists");
             }
             GridFSInputFile inputFile = gfsBucket.createFile(inputStream, fileName);
             inputFile.setContentType(tika.detect(fileName));
             inputFile.save();
+            ensureBucket(databaseName, bucketName);
             return inputFile.getId().toString();
         } catch (MongoException ex) {
             logger.error("An error occured while adding the file", ex);
@@ -316,11 +321,14 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName);
+            applyConcernDefaults(gfsBucket.getFilesCollection(), databaseName, bucketName + ".files");
+            applyConcernDefaults(gfsBucket.getChunksCollection(), databaseName, bucketName + ".chunks");
             GridFSDBFile gfsFile = gfsBucket.findOne(fileName);
             if (gfsFile == null) {
                 GridFSInputFile inputFile = gfsBucket.createFile(inputStream, fileName);
                 inputFile.setContentType(tika.detect(fileName));
                 inputFile.save();
+                ensureBucket(databaseName, bucketName);
                 return inputFile.getId().toString();
             } else {
                 gfsBucket.remove(gfsFile);
@@ -336,12 +344,15 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
     }
 
     /**
-     * Returns the file with the given file name.
+     * Returns the file with the given file name. The content isn't read
+     * here; chunks are fetched one at a time as the stream of the returned
+     * envelope is consumed.
      *
      * @param databaseName the database
      * @param bucketName the bucket
      * @param fileName the file name
-     * @return the file in with the given file name
+     * @return the file in with the given file name, which must be closed by
+     * the caller
      * @throws DatasourceException
      * @throws IOException
      * @throws NotFoundException
@@ -359,10 +370,39 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             if (gfsFile == null) {
                 throw new NotFoundException("The file doesnt exist");
             }
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            gfsFile.writeTo(baos);
+            return new FileEnvelope(gfsFile.getInputStream(), gfsFile.getContentType(), fileName,
+                    gfsFile.getLength(), gfsFile.getMD5(), gfsFile.getUploadDate(),
+                    gfsFile.getId(), gfsFile.getChunkSize());
+        } catch (MongoException ex) {
+            logger.error("An error occured while retrieving the file", ex);
+            throw new DatasourceException("An error occured while retrieving the file");
+        }
+    }
 
-            return new FileEnvelope(baos.toByteArray(), gfsFile.getContentType(), fileName);
+    /**
+     * Opens a stream over a range of a file. Only the chunks overlapping the
+     * range are fetched, selected by their index, rather than reading the
+     * file from the start.
+     *
+     * @param databaseName the database
+     * @param bucketName the bucket
+     * @param file the file as returned by {@link #getByFileName(String, String, String)}
+     * @param range the range of bytes to read
+     * @return the stream over the range, which must be closed by the caller
+     * @throws DatasourceException
+     */
+    @Override
+    public InputStream getRange(String databaseName, String bucketName, FileEnvelope file, ByteRange range)
+            throws DatasourceException {
+        try {
+            DB mongoDatabase = mongoClient.getDB(databaseName);
+            long first = range.getStart() / file.getChunkSize();
+            long last = range.getEnd() / file.getChunkSize();
+            BasicDBObject query = new BasicDBObject("files_id", file.getId())
+                    .append("n", new BasicDBObject("$gte", (int) first).append("$lte", (int) last));
+            DBCursor cursor = mongoDatabase.getCollection(bucketName + ".chunks").find(query)
+                    .sort(new BasicDBObject("n", 1));
+            return new ChunkInputStream(cursor, cursor, file.getChunkSize(), range.getStart(), range.getEnd());
         } catch (MongoException ex) {
             logger.error("An error occured while retrieving the file", ex);
             throw new DatasourceException("An error occured while retrieving the file");
@@ -388,6 +428,8 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             }
             DB mongoDatabase = mongoClient.getDB(databaseName);
             GridFS gfsBucket = new GridFS(mongoDatabase, bucketName);
+            applyConcernDefaults(gfsBucket.getFilesCollection(), databaseName, bucketName + ".files");
+            applyConcernDefaults(gfsBucket.getChunksCollection(), databaseName, bucketName + ".chunks");
             GridFSDBFile gfsFile = gfsBucket.findOne(fileName);
             if (gfsFile == null) {
                 throw new NotFoundException("The file doesnt exist");
@@ -399,4 +441,15 @@ public class GridFsDataServiceImpl extends AbstractDataService implements GridFs
             throw new DatasourceException("An error occured while removing the file");
         }
     }
+
+    /**
+     * Keeps the cached namespaces consistent after a file save implicitly created the bucket.
+     *
+     * @param databaseName the database
+     * @param bucketName the bucket
+     */
+    private void ensureBucket(String databaseName, String bucketName) {
+        ensureNamespace(databaseName, bucketName + ".files");
+        ensureNamespace(databaseName, bucketName + ".chunks");
+    }
 }
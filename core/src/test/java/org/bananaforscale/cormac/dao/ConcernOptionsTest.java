@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ConcernOptions} class.
+ */
+public class ConcernOptionsTest {
+
+    /**
+     * Tests building a write concern from the settings of a request.
+     */
+    @Test
+    public void testWriteConcern() {
+        final WriteConcern writeConcern = ConcernOptions.parse("majority", "true", "5000", null).getWriteConcern();
+        assertEquals("majority", writeConcern.getWObject());
+        assertEquals(5000, writeConcern.getWtimeout());
+        assertTrue(writeConcern.getJ());
+        assertEquals(2, ConcernOptions.parse("2", null, null, null).getWriteConcern().getWObject());
+        assertEquals(1, ConcernOptions.parse(null, "true", null, null).getWriteConcern().getWObject());
+    }
+
+    /**
+     * Tests that options without settings change nothing.
+     */
+    @Test
+    public void testEmpty() {
+        final ConcernOptions options = ConcernOptions.parse(null, "", " ", null);
+        assertTrue(options.isEmpty());
+        assertNull(options.getWriteConcern());
+        assertNull(options.getReadPreference());
+        assertNull(ConcernOptions.parse(null, null, null, "nearest").getWriteConcern());
+    }
+
+    /**
+     * Tests parsing the settings of a configuration entry.
+     */
+    @Test
+    public void testParseSettings() {
+        final ConcernOptions options = ConcernOptions.parse("w:0, readPreference:secondaryPreferred");
+        assertEquals(0, options.getWriteConcern().getWObject());
+        assertEquals(ReadPreference.secondaryPreferred(), options.getReadPreference());
+    }
+
+    /**
+     * Tests that more specific settings take precedence, keeping the others.
+     */
+    @Test
+    public void testOverrideWith() {
+        final ConcernOptions defaults = ConcernOptions.parse("w:majority,wtimeout:1000,readPreference:nearest");
+        final ConcernOptions options = defaults.overrideWith(ConcernOptions.parse("1", null, null, null));
+        assertEquals(1, options.getWriteConcern().getWObject());
+        assertEquals(1000, options.getWriteConcern().getWtimeout());
+        assertEquals(ReadPreference.nearest(), options.getReadPreference());
+        assertFalse(defaults.overrideWith(ConcernOptions.NONE).isEmpty());
+    }
+
+    /**
+     * Tests rejecting a negative w.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeW() {
+        ConcernOptions.parse("-1", null, null, null);
+    }
+
+    /**
+     * Tests rejecting a wtimeout that isn't a number.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTimeout() {
+        ConcernOptions.parse(null, null, "soon", null);
+    }
+
+    /**
+     * Tests rejecting an unknown read preference.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidReadPreference() {
+        ConcernOptions.parse(null, null, null, "fastest");
+    }
+
+    /**
+     * Tests that the message of a rejected read preference doesn't repeat the given value.
+     */
+    @Test
+    public void testInvalidReadPreferenceMessage() {
+        try {
+            ConcernOptions.parse(null, null, null, "x\",\"injected\":\"1");
+            fail("The read preference was accepted");
+        } catch (IllegalArgumentException ex) {
+            assertFalse(ex.getMessage().contains("injected"));
+        }
+    }
+
+    /**
+     * Tests rejecting an unknown setting.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSetting() {
+        ConcernOptions.parse("w:1,fsync:true");
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import com.mongodb.ReadPreference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ConcernPolicy} class.
+ */
+public class ConcernPolicyTest {
+
+    /**
+     * Tests that the settings of the most specific entry win over the less specific ones.
+     */
+    @Test
+    public void testForNamespace() {
+        final ConcernPolicy policy = ConcernPolicy.parse(
+                "*=w:majority,readPreference:primary; logs.*=w:1; logs.audit=j:true");
+        final ConcernOptions audit = policy.forNamespace("logs", "audit");
+        assertEquals(1, audit.getWriteConcern().getWObject());
+        assertTrue(audit.getWriteConcern().getJ());
+        assertEquals(ReadPreference.primary(), audit.getReadPreference());
+        assertEquals(1, policy.forNamespace("logs", "access").getWriteConcern().getWObject());
+        assertEquals("majority", policy.forNamespace("shop", "orders").getWriteConcern().getWObject());
+    }
+
+    /**
+     * Tests that an empty policy gives no defaults.
+     */
+    @Test
+    public void testEmpty() {
+        assertTrue(ConcernPolicy.parse(null).isEmpty());
+        assertTrue(ConcernPolicy.parse(" ; ").isEmpty());
+        assertNull(ConcernPolicy.parse("").forNamespace("shop", "orders").getWriteConcern());
+    }
+
+    /**
+     * Tests rejecting an entry without settings.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        ConcernPolicy.parse("shop.orders");
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DocumentCache} class.
+ */
+public class DocumentCacheTest {
+
+    private static final NamespaceFilter ALL = NamespaceFilter.parse("*");
+
+    /**
+     * Tests that cached documents are returned and counted.
+     */
+    @Test
+    public void testGetPut() {
+        final DocumentCache cache = new DocumentCache(1 << 20, ALL);
+        assertNull(cache.get("db", "coll", "a"));
+        cache.put("db", "coll", "a", "{}", cache.stamp("db", "coll", "a"));
+        assertEquals("{}", cache.get("db", "coll", "a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(cache.getSizeBytes() > 0);
+    }
+
+    /**
+     * Tests that only the selected collections are cached.
+     */
+    @Test
+    public void testFilter() {
+        final DocumentCache cache = new DocumentCache(1 << 20, NamespaceFilter.parse("db.coll"));
+        assertTrue(cache.isCached("db", "coll"));
+        assertFalse(cache.isCached("db", "other"));
+        cache.put("db", "other", "a", "{}", cache.stamp("db", "other", "a"));
+        assertNull(cache.get("db", "other", "a"));
+    }
+
+    /**
+     * Tests invalidating a document, a collection, and a database.
+     */
+    @Test
+    public void testInvalidate() {
+        final DocumentCache cache = new DocumentCache(1 << 20, ALL);
+        put(cache, "db", "coll", "a");
+        put(cache, "db", "coll", "b");
+        put(cache, "db", "other", "c");
+        put(cache, "db2", "coll", "d");
+        cache.invalidate("db", "coll", "a");
+        assertNull(cache.get("db", "coll", "a"));
+        assertNotNull(cache.get("db", "coll", "b"));
+        cache.invalidate("db", "coll");
+        assertNull(cache.get("db", "coll", "b"));
+        assertNotNull(cache.get("db", "other", "c"));
+        cache.invalidate("db");
+        assertNull(cache.get("db", "other", "c"));
+        assertNotNull(cache.get("db2", "coll", "d"));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    /**
+     * Tests that a document read before a concurrent invalidation is not cached.
+     */
+    @Test
+    public void testStaleStamp() {
+        final DocumentCache cache = new DocumentCache(1 << 20, ALL);
+        final long stamp = cache.stamp("db", "coll", "a");
+        cache.invalidate("db", "coll", "a");
+        cache.put("db", "coll", "a", "{}", stamp);
+        assertNull(cache.get("db", "coll", "a"));
+    }
+
+    /**
+     * Tests that the size stays within the bound and that documents read more than once survive
+     * a scan over documents read only once.
+     */
+    @Test
+    public void testEviction() {
+        final DocumentCache cache = new DocumentCache(16 * 2048, ALL);
+        for (int i = 0; i < 20; i++) {
+            put(cache, "db", "coll", "hot" + i);
+            cache.get("db", "coll", "hot" + i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            put(cache, "db", "coll", "scan" + i);
+        }
+        assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+        assertTrue(cache.getEvictionCount() > 0);
+        int retained = 0;
+        for (int i = 0; i < 20; i++) {
+            if (cache.get("db", "coll", "hot" + i) != null) {
+                retained++;
+            }
+        }
+        assertEquals(20, retained);
+    }
+
+    /**
+     * Tests that a document larger than the share of a stripe is not cached.
+     */
+    @Test
+    public void testOversized() {
+        final DocumentCache cache = new DocumentCache(16 * 256, ALL);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            sb.append('x');
+        }
+        cache.put("db", "coll", "a", sb.toString(), cache.stamp("db", "coll", "a"));
+        assertNull(cache.get("db", "coll", "a"));
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    private static void put(final DocumentCache cache, final String databaseName,
+            final String collectionName, final String documentId) {
+        cache.put(databaseName, collectionName, documentId, "{\"id\":\"" + documentId + "\"}",
+                cache.stamp(databaseName, collectionName, documentId));
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NamespaceCache} class.
+ */
+public class NamespaceCacheTest {
+
+    private static final Set<String> NAMES = new HashSet<>(Arrays.asList("alpha", "beta"));
+
+    /**
+     * Tests that cached names are returned and counted as hits.
+     */
+    @Test
+    public void testHit() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        cache.putDatabaseNames(NAMES, cache.stamp());
+        cache.putCollectionNames("alpha", NAMES, cache.stamp());
+        assertEquals(NAMES, cache.getDatabaseNames());
+        assertEquals(NAMES, cache.getCollectionNames("alpha"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    /**
+     * Tests that missing names are counted as misses.
+     */
+    @Test
+    public void testMiss() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        assertNull(cache.getDatabaseNames());
+        assertNull(cache.getCollectionNames("alpha"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * Tests that nothing is retained when the time to live disables the cache.
+     */
+    @Test
+    public void testDisabled() {
+        final NamespaceCache cache = new NamespaceCache(0);
+        cache.putDatabaseNames(NAMES, cache.stamp());
+        cache.putCollectionNames("alpha", NAMES, cache.stamp());
+        assertNull(cache.getDatabaseNames());
+        assertNull(cache.getCollectionNames("alpha"));
+    }
+
+    /**
+     * Tests that invalidating a database discards its collection names and the database names
+     * while leaving other databases alone.
+     */
+    @Test
+    public void testInvalidate() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        cache.putDatabaseNames(NAMES, cache.stamp());
+        cache.putCollectionNames("alpha", NAMES, cache.stamp());
+        cache.putCollectionNames("beta", NAMES, cache.stamp());
+        cache.invalidate("alpha");
+        assertNull(cache.getDatabaseNames());
+        assertNull(cache.getCollectionNames("alpha"));
+        assertNotNull(cache.getCollectionNames("beta"));
+    }
+
+    /**
+     * Tests that {@link NamespaceCache#ensureCollection(String, String)} only invalidates when a
+     * new namespace appears.
+     */
+    @Test
+    public void testEnsureCollection() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        cache.putDatabaseNames(NAMES, cache.stamp());
+        cache.putCollectionNames("alpha", NAMES, cache.stamp());
+        cache.ensureCollection("alpha", "beta");
+        assertNotNull(cache.getCollectionNames("alpha"));
+        cache.ensureCollection("alpha", "gamma");
+        assertNull(cache.getCollectionNames("alpha"));
+        assertNull(cache.getDatabaseNames());
+    }
+
+    /**
+     * Tests that single collection lookups are cached and that a cached listing takes precedence.
+     */
+    @Test
+    public void testCollectionExists() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        assertNull(cache.getCollectionExists("alpha", "beta"));
+        cache.putCollectionExists("alpha", "beta", false, cache.stamp());
+        assertEquals(Boolean.FALSE, cache.getCollectionExists("alpha", "beta"));
+        cache.putCollectionNames("alpha", NAMES, cache.stamp());
+        assertEquals(Boolean.TRUE, cache.getCollectionExists("alpha", "beta"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Tests that a cached negative lookup is discarded once the collection is implicitly created.
+     */
+    @Test
+    public void testEnsureCollectionAfterNegativeLookup() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        cache.putCollectionExists("alpha", "beta", false, cache.stamp());
+        cache.putCollectionExists("alpha", "gamma", true, cache.stamp());
+        cache.ensureCollection("alpha", "gamma");
+        assertEquals(Boolean.FALSE, cache.getCollectionExists("alpha", "beta"));
+        cache.ensureCollection("alpha", "beta");
+        assertNull(cache.getCollectionExists("alpha", "beta"));
+    }
+
+    /**
+     * Tests that a negative lookup made before an implicit create is not cached.
+     */
+    @Test
+    public void testPutAfterEnsureCollection() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        final long stamp = cache.stamp();
+        cache.ensureCollection("alpha", "beta");
+        cache.putCollectionExists("alpha", "beta", false, stamp);
+        assertNull(cache.getCollectionExists("alpha", "beta"));
+    }
+
+    /**
+     * Tests that the cached names cannot be modified by callers.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        cache.putDatabaseNames(NAMES, cache.stamp());
+        cache.getDatabaseNames().add("gamma");
+    }
+
+    /**
+     * Tests that names listed before an invalidation are not cached.
+     */
+    @Test
+    public void testPutAfterInvalidate() {
+        final NamespaceCache cache = new NamespaceCache(60000);
+        final long stamp = cache.stamp();
+        cache.invalidate("alpha");
+        cache.putDatabaseNames(NAMES, stamp);
+        cache.putCollectionNames("alpha", NAMES, stamp);
+        cache.putCollectionExists("alpha", "beta", false, stamp);
+        assertNull(cache.getDatabaseNames());
+        assertNull(cache.getCollectionNames("alpha"));
+        assertNull(cache.getCollectionExists("alpha", "beta"));
+    }
+
+}
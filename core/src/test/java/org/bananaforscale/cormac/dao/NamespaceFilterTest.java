@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NamespaceFilter} class.
+ */
+public class NamespaceFilterTest {
+
+    /**
+     * Tests matching single collections and every collection of a database.
+     */
+    @Test
+    public void testMatches() {
+        final NamespaceFilter filter = NamespaceFilter.parse("shop.products, users.*");
+        assertTrue(filter.matches("shop", "products"));
+        assertFalse(filter.matches("shop", "orders"));
+        assertTrue(filter.matches("users", "profiles"));
+        assertFalse(filter.isEmpty());
+    }
+
+    /**
+     * Tests the wildcard selecting every collection.
+     */
+    @Test
+    public void testAll() {
+        assertTrue(NamespaceFilter.parse("*").matches("any", "thing"));
+    }
+
+    /**
+     * Tests that an empty filter matches nothing.
+     */
+    @Test
+    public void testEmpty() {
+        assertTrue(NamespaceFilter.parse(null).isEmpty());
+        assertTrue(NamespaceFilter.parse(" , ").isEmpty());
+        assertFalse(NamespaceFilter.parse("").matches("shop", "products"));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ContinuationToken} class.
+ */
+public class ContinuationTokenTest {
+
+    /**
+     * Tests that a token survives encoding with the types of its values intact.
+     */
+    @Test
+    public void testEncodeDecode() {
+        final ObjectId id = new ObjectId();
+        final Date date = new Date(1436000000000L);
+        final ContinuationToken token = new ContinuationToken("created", -1, date, id);
+        final ContinuationToken decoded = ContinuationToken.decode(token.encode());
+        assertEquals("created", decoded.getSortField());
+        assertEquals(-1, decoded.getDirection());
+        assertEquals(date, decoded.getLastValue());
+        assertEquals(id, decoded.getLastId());
+    }
+
+    /**
+     * Tests the token built from the last document of a page, including nested sort fields.
+     */
+    @Test
+    public void testAfter() {
+        final ObjectId id = new ObjectId();
+        final Document document = new Document("_id", id)
+                .append("meta", new Document("rank", 7));
+        final ContinuationToken token = ContinuationToken.after("meta.rank", 1, document);
+        assertEquals(7, token.getLastValue());
+        assertEquals(id, token.getLastId());
+        assertNull(ContinuationToken.after("missing.path", 1, document).getLastValue());
+    }
+
+    /**
+     * Tests the range predicate when ordering by {@code _id} only.
+     */
+    @Test
+    public void testIdFilter() {
+        final ObjectId id = new ObjectId();
+        final ContinuationToken token = new ContinuationToken(null, 1, null, id);
+        assertEquals(new Document("_id", new Document("$gt", id)), token.toFilter());
+        assertEquals(new Document("_id", 1), ContinuationToken.sort(null, 1));
+    }
+
+    /**
+     * Tests the range predicate when ordering by a field, which falls back to {@code _id} for
+     * documents with an equal sort value.
+     */
+    @Test
+    public void testFieldFilter() {
+        final ObjectId id = new ObjectId();
+        final ContinuationToken token = new ContinuationToken("rank", 1, "b", id);
+        final List<Document> expected = new ArrayList<>();
+        expected.add(new Document("rank", new Document("$gt", "b")));
+        for (final int type : new int[]{3, 4, 5, 7, 8, 9, 17, 11}) {
+            expected.add(new Document("rank", new Document("$type", type)));
+        }
+        expected.add(new Document("rank", new Document("$eq", "b")).append("_id", new Document("$gt", id)));
+        assertEquals(new Document("$or", expected), token.toFilter());
+        assertEquals(new Document("rank", -1).append("_id", -1),
+                ContinuationToken.sort("rank", -1));
+    }
+
+    /**
+     * Tests that a page ending on a document without the sort field is followed by the
+     * remaining documents without it and by all documents having it in ascending order.
+     */
+    @Test
+    public void testFieldFilterNullValue() {
+        final ObjectId id = new ObjectId();
+        final ContinuationToken token = new ContinuationToken("rank", 1, null, id);
+        final Document expected = new Document("$or", Arrays.asList(
+                new Document("rank", new Document("$ne", null)),
+                new Document("rank", new Document("$eq", null)).append("_id", new Document("$gt", id))));
+        assertEquals(expected, token.toFilter());
+        final Document last = new Document("$or", Arrays.asList(
+                new Document("rank", new Document("$eq", null)).append("_id", new Document("$lt", id))));
+        assertEquals(last, new ContinuationToken("rank", -1, null, id).toFilter());
+    }
+
+    /**
+     * Tests that documents without the sort field, which sort first, are still selected after
+     * a number in descending order.
+     */
+    @Test
+    public void testFieldFilterDescendingMissing() {
+        final ObjectId id = new ObjectId();
+        final ContinuationToken token = new ContinuationToken("rank", -1, 3, id);
+        final Document expected = new Document("$or", Arrays.asList(
+                new Document("rank", new Document("$lt", 3)),
+                new Document("rank", null),
+                new Document("rank", new Document("$eq", 3)).append("_id", new Document("$lt", id))));
+        assertEquals(expected, token.toFilter());
+    }
+
+    /**
+     * Tests that a document value with operator keys is matched for equality rather than
+     * read as query operators.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFieldFilterOperatorValue() {
+        final ObjectId id = new ObjectId();
+        final Document value = new Document("$ne", 0);
+        final List<Object> clauses = (List<Object>) new ContinuationToken("rank", 1, value, id)
+                .toFilter().get("$or");
+        assertEquals(new Document("rank", new Document("$eq", value))
+                .append("_id", new Document("$gt", id)), clauses.get(clauses.size() - 1));
+    }
+
+    /**
+     * Tests that a token issued for one ordering is rejected for another.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testVerifyOrderMismatch() {
+        new ContinuationToken("rank", 1, 3, new ObjectId()).verifyOrder("rank", -1);
+    }
+
+    /**
+     * Tests that a malformed token is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        ContinuationToken.decode("not-a-token");
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FindAndModify} class.
+ */
+public class FindAndModifyTest {
+
+    /**
+     * Tests the options of an update request.
+     */
+    @Test
+    public void testParseUpdate() {
+        final FindAndModify request = FindAndModify.parse(Document.parse("{\"filter\": {\"state\": \"ready\"},"
+                + " \"sort\": {\"priority\": -1}, \"update\": {\"$set\": {\"state\": \"taken\"}},"
+                + " \"upsert\": true, \"returnDocument\": \"after\"}"), true);
+        assertEquals(new Document("state", "ready"), request.getFilter());
+        assertTrue(request.isUpsert());
+        final FindOneAndUpdateOptions options = request.toUpdateOptions();
+        assertEquals(new Document("priority", -1), options.getSort());
+        assertEquals(ReturnDocument.AFTER, options.getReturnDocument());
+        assertTrue(options.isUpsert());
+    }
+
+    /**
+     * Tests the defaults of a delete request.
+     */
+    @Test
+    public void testParseDelete() {
+        final FindAndModify request = FindAndModify.parse(new Document(), false);
+        assertEquals(new Document(), request.getFilter());
+        assertNull(request.getUpdate());
+        assertFalse(request.isUpsert());
+        assertNull(request.toDeleteOptions().getSort());
+    }
+
+    /**
+     * Tests that an update request without an update is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingUpdate() {
+        FindAndModify.parse(Document.parse("{\"filter\": {}}"), true);
+    }
+
+    /**
+     * Tests that an unknown returnDocument is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidReturnDocument() {
+        FindAndModify.parse(Document.parse("{\"update\": {\"$inc\": {\"n\": 1}}, \"returnDocument\": \"new\"}"), true);
+    }
+
+    /**
+     * Tests that update options are refused for a delete.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateOptionsOnDelete() {
+        FindAndModify.parse(Document.parse("{\"upsert\": true}"), false);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.bananaforscale.cormac.dao.NamespaceFilter;
+import org.bson.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link IngestQueue} class.
+ */
+public class IngestQueueTest {
+
+    /**
+     * Tests that documents are turned away once the queue of their collection is full.
+     */
+    @Test
+    public void testOfferWhenFull() {
+        final RecordingQueue queue = new RecordingQueue(2, 10, 10000, 0);
+        assertTrue(queue.offer("metrics", "cpu", new Document("v", 1)));
+        assertTrue(queue.offer("metrics", "cpu", new Document("v", 2)));
+        assertFalse(queue.offer("metrics", "cpu", new Document("v", 3)));
+        assertTrue(queue.offer("metrics", "memory", new Document("v", 4)));
+        assertEquals(3, queue.getDepth());
+        assertEquals(3, queue.getAcceptedCount());
+        assertEquals(1, queue.getRejectedCount());
+    }
+
+    /**
+     * Tests selecting the collections accepting queued writes.
+     */
+    @Test
+    public void testAccepts() {
+        final RecordingQueue queue = new RecordingQueue(10, 10, 10000, 0);
+        assertTrue(queue.accepts("metrics", "cpu"));
+        assertFalse(queue.accepts("shop", "orders"));
+    }
+
+    /**
+     * Tests that a full batch is flushed without waiting for the linger time.
+     */
+    @Test
+    public void testFlushFullBatch() throws InterruptedException {
+        final RecordingQueue queue = new RecordingQueue(100, 2, 60000, 1);
+        queue.start();
+        queue.offer("metrics", "cpu", new Document("v", 1));
+        queue.offer("metrics", "cpu", new Document("v", 2));
+        assertTrue(queue.flushed.await(10, TimeUnit.SECONDS));
+        assertEquals(2, queue.batches.get(0).size());
+        queue.close(10000);
+    }
+
+    /**
+     * Tests that a partial batch is flushed once it has waited for the linger time.
+     */
+    @Test
+    public void testFlushAfterLinger() throws InterruptedException {
+        final RecordingQueue queue = new RecordingQueue(100, 100, 20, 1);
+        queue.start();
+        queue.offer("metrics", "cpu", new Document("v", 1));
+        assertTrue(queue.flushed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, queue.batches.get(0).size());
+        queue.close(10000);
+    }
+
+    /**
+     * Tests that closing the queue flushes the documents still waiting and refuses new ones.
+     */
+    @Test
+    public void testCloseDrains() throws InterruptedException {
+        final RecordingQueue queue = new RecordingQueue(100, 2, 60000, 0);
+        queue.start();
+        for (int i = 0; i < 5; i++) {
+            queue.offer("metrics", "cpu", new Document("v", i));
+        }
+        assertEquals(0, queue.close(10000));
+        assertEquals(5, queue.getInsertedCount());
+        assertFalse(queue.offer("metrics", "cpu", new Document("v", 5)));
+    }
+
+    /**
+     * Tests that every document accepted while the queue is being closed is inserted.
+     */
+    @Test
+    public void testCloseWhileOffering() throws InterruptedException {
+        final RecordingQueue queue = new RecordingQueue(100000, 50, 60000, 0);
+        queue.start();
+        final CountDownLatch started = new CountDownLatch(4);
+        final List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int i = 0; i < 10000; i++) {
+                        queue.offer("metrics", "cpu", new Document("v", i));
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        started.await();
+        assertEquals(0, queue.close(10000));
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(0, queue.getDepth());
+        assertEquals(queue.getAcceptedCount(), queue.getInsertedCount());
+    }
+
+    /**
+     * Tests that the documents of a batch the datasource fails to insert are counted.
+     */
+    @Test
+    public void testFailedFlush() throws InterruptedException {
+        final RecordingQueue queue = new RecordingQueue(100, 10, 60000, 0);
+        queue.failing = true;
+        queue.start();
+        queue.offer("metrics", "cpu", new Document("v", 1));
+        queue.offer("metrics", "cpu", new Document("v", 2));
+        queue.close(10000);
+        assertEquals(0, queue.getInsertedCount());
+        assertEquals(2, queue.getFailedCount());
+        assertEquals(1, queue.getFlushCount());
+    }
+
+    /**
+     * A queue recording the batches instead of inserting them.
+     */
+    private static class RecordingQueue extends IngestQueue {
+
+        private final List<List<Document>> batches = new ArrayList<>();
+        private final CountDownLatch flushed;
+        private volatile boolean failing;
+
+        RecordingQueue(final int capacity, final int batchSize, final long lingerMillis, final int flushes) {
+            super(null, null, null, NamespaceFilter.parse("metrics.*"), capacity, batchSize, lingerMillis);
+            this.flushed = new CountDownLatch(flushes);
+        }
+
+        @Override
+        int insert(final String databaseName, final String collectionName, final List<Document> batch) {
+            if (failing) {
+                throw new MongoException("The datasource is unavailable");
+            }
+            synchronized (batches) {
+                batches.add(new ArrayList<Document>(batch));
+            }
+            flushed.countDown();
+            return batch.size();
+        }
+    }
+
+}
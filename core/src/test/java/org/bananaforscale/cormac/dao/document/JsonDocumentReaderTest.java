@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bananaforscale.cormac.exception.serialization.DeserializeException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JsonDocumentReader} class.
+ */
+public class JsonDocumentReaderTest {
+
+    /**
+     * Tests that array elements are split at top level commas only.
+     */
+    @Test
+    public void testArray() throws IOException, DeserializeException {
+        final List<String> documents = readAll(
+                " [{\"a\": [1, 2]}, {\"b\": \"x,]}\\\"\"} ,\n{\"c\": {\"d\": 1}}]");
+        assertEquals(Arrays.asList("{\"a\": [1, 2]}", "{\"b\": \"x,]}\\\"\"}", "{\"c\": {\"d\": 1}}"),
+                documents);
+    }
+
+    /**
+     * Tests that newline delimited documents are read line by line, skipping blank lines and
+     * leaving malformed lines to the caller.
+     */
+    @Test
+    public void testNewlineDelimited() throws IOException, DeserializeException {
+        final List<String> documents = readAll("{\"a\": 1}\r\n\n  {\"b\": 2}\nnot json\n");
+        assertEquals(Arrays.asList("{\"a\": 1}", "{\"b\": 2}", "not json"), documents);
+    }
+
+    /**
+     * Tests empty bodies and arrays.
+     */
+    @Test
+    public void testEmpty() throws IOException, DeserializeException {
+        assertTrue(readAll("").isEmpty());
+        assertTrue(readAll(" \n ").isEmpty());
+        assertTrue(readAll("[ ]").isEmpty());
+    }
+
+    /**
+     * Tests the line numbers of the documents read.
+     */
+    @Test
+    public void testLineNumber() throws IOException, DeserializeException {
+        final JsonDocumentReader reader = new JsonDocumentReader(
+                new StringReader("\n{\"a\": 1}\r\n\n  {\"b\": 2}\n"));
+        reader.next();
+        assertEquals(2, reader.getLineNumber());
+        reader.next();
+        assertEquals(4, reader.getLineNumber());
+        final JsonDocumentReader array = new JsonDocumentReader(
+                new StringReader("[{\"a\": 1},\n\n{\"b\": 2}]"));
+        array.next();
+        assertEquals(1, array.getLineNumber());
+        array.next();
+        assertEquals(3, array.getLineNumber());
+    }
+
+    /**
+     * Tests that an overlong line is reported and reading goes on with the next line.
+     */
+    @Test
+    public void testMaxLength() throws IOException, DeserializeException {
+        final JsonDocumentReader reader = new JsonDocumentReader(
+                new StringReader("{\"a\": 1}\n{\"long\": 1234567890}\n{\"b\": 2}"), 12);
+        assertEquals("{\"a\": 1}", reader.next());
+        try {
+            reader.next();
+            fail("The overlong line was read");
+        } catch (DeserializeException ex) {
+            assertEquals(2, reader.getLineNumber());
+        }
+        assertEquals("{\"b\": 2}", reader.next());
+        assertNull(reader.next());
+    }
+
+    /**
+     * Tests that an array missing its closing bracket is reported.
+     */
+    @Test(expected = DeserializeException.class)
+    public void testUnterminatedArray() throws IOException, DeserializeException {
+        readAll("[{\"a\": 1}, {\"b\": 2}");
+    }
+
+    /**
+     * Tests that an empty array element is reported.
+     */
+    @Test(expected = DeserializeException.class)
+    public void testEmptyElement() throws IOException, DeserializeException {
+        readAll("[{\"a\": 1},, {\"b\": 2}]");
+    }
+
+    /**
+     * Tests that a trailing comma, as left by a truncated array, is reported.
+     */
+    @Test(expected = DeserializeException.class)
+    public void testTrailingComma() throws IOException, DeserializeException {
+        readAll("[{\"a\": 1}, {\"b\": 2},]");
+    }
+
+    /**
+     * Tests that content following the array is reported.
+     */
+    @Test(expected = DeserializeException.class)
+    public void testContentAfterArray() throws IOException, DeserializeException {
+        readAll("[{\"a\": 1}] [{\"b\": 2}]");
+    }
+
+    /**
+     * Tests that whitespace may follow the array.
+     */
+    @Test
+    public void testWhitespaceAfterArray() throws IOException, DeserializeException {
+        assertEquals(Arrays.asList("{\"a\": 1}"), readAll("[{\"a\": 1}]\n  \n"));
+    }
+
+    private static List<String> readAll(final String body) throws IOException, DeserializeException {
+        final JsonDocumentReader reader = new JsonDocumentReader(new StringReader(body));
+        final List<String> documents = new ArrayList<>();
+        String document;
+        while ((document = reader.next()) != null) {
+            documents.add(document);
+        }
+        reader.close();
+        return documents;
+    }
+}
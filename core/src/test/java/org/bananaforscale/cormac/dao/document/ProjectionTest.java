@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import org.bson.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Projection} class.
+ */
+public class ProjectionTest {
+
+    /**
+     * Tests that no projection is sent when every field is returned.
+     */
+    @Test
+    public void testNone() {
+        assertNull(Projection.parse(null, true).toDocument());
+        assertNull(Projection.parse(" , ", true).toDocument());
+        assertEquals(new Document("_id", 0), Projection.parse("", false).toDocument());
+    }
+
+    /**
+     * Tests an inclusion list with nested paths and {@code _id} suppression.
+     */
+    @Test
+    public void testInclude() {
+        final Document expected = new Document("name", 1).append("address.city", 1)
+                .append("_id", 0);
+        assertEquals(expected, Projection.parse("name, address.city", false).toDocument());
+    }
+
+    /**
+     * Tests an exclusion list, including the legacy {@code field:0} form.
+     */
+    @Test
+    public void testExclude() {
+        final Document expected = new Document("body", 0).append("meta.raw", 0);
+        assertEquals(expected, Projection.parse("-body,meta.raw:0", true).toDocument());
+    }
+
+    /**
+     * Tests that {@code _id} is controlled by the includeId flag rather than the field list.
+     */
+    @Test
+    public void testIdIgnoredInFields() {
+        assertEquals(new Document("name", 1), Projection.parse("_id,name", true).toDocument());
+        assertEquals(new Document("body", 0).append("_id", 0),
+                Projection.parse("-_id,-body", false).toDocument());
+    }
+
+    /**
+     * Tests that mixing inclusions and exclusions is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixed() {
+        Projection.parse("name,-body", true);
+    }
+
+    /**
+     * Tests that fields retained for an inclusion list are returned by the server and stripped
+     * from the document afterwards.
+     */
+    @Test
+    public void testRetainInclude() {
+        final Projection projection = Projection.parse("name", false).retain("_id", "meta.rank");
+        assertEquals(new Document("name", 1).append("meta.rank", 1), projection.toDocument());
+        final Document document = new Document("_id", 1).append("name", "a")
+                .append("meta", new Document("rank", 2));
+        projection.removeRetained(document);
+        assertEquals(new Document("name", "a"), document);
+    }
+
+    /**
+     * Tests that an excluded field needed for the sort order is returned and stripped again.
+     */
+    @Test
+    public void testRetainExclude() {
+        final Projection projection = Projection.parse("-meta,-body", true).retain("_id", "meta.rank");
+        assertEquals(new Document("body", 0), projection.toDocument());
+        final Document document = new Document("_id", 1).append("meta", new Document("rank", 2));
+        projection.removeRetained(document);
+        assertEquals(new Document("_id", 1), document);
+    }
+
+    /**
+     * Tests that nothing is stripped when the projection already returns the retained fields.
+     */
+    @Test
+    public void testRetainCovered() {
+        final Projection projection = Projection.parse("meta", true).retain("_id", "meta.rank");
+        assertEquals(new Document("meta", 1), projection.toDocument());
+        final Document document = new Document("_id", 1).append("meta", new Document("rank", 2));
+        projection.removeRetained(document);
+        assertEquals(2, ((Document) document.get("meta")).get("rank"));
+    }
+
+    /**
+     * Tests that a retained field enclosing included fields replaces them and that only the
+     * fields which weren't included are stripped afterwards.
+     */
+    @Test
+    public void testRetainEnclosingInclude() {
+        final Projection projection = Projection.parse("a.b,name", true).retain("_id", "a");
+        assertEquals(new Document("name", 1).append("a", 1), projection.toDocument());
+        final Document document = new Document("_id", 1).append("name", "x")
+                .append("a", new Document("b", 2).append("c", 3));
+        projection.removeRetained(document);
+        assertEquals(new Document("_id", 1).append("name", "x").append("a", new Document("b", 2)),
+                document);
+    }
+
+    /**
+     * Tests that an exclusion beneath a retained field is lifted, so the whole sort value is
+     * returned, and stripped again afterwards.
+     */
+    @Test
+    public void testRetainExcludeBeneath() {
+        final Projection projection = Projection.parse("-a.b.c", true).retain("_id", "a.b");
+        assertNull(projection.toDocument());
+        final Document document = new Document("_id", 1)
+                .append("a", new Document("b", new Document("c", 1).append("d", 2)));
+        projection.removeRetained(document);
+        assertEquals(new Document("_id", 1).append("a", new Document("b", new Document("d", 2))),
+                document);
+    }
+
+}
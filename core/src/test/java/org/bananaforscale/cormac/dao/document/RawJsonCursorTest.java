@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.util.JSON;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RawJsonCursor} class.
+ */
+public class RawJsonCursorTest {
+
+    /**
+     * Tests that the transcoded JSON reads back the same as the output of the legacy serializer.
+     */
+    @Test
+    public void testMatchesLegacySerializer() {
+        final Document document = new Document("_id", new ObjectId())
+                .append("name", "café \"quoted\"")
+                .append("count", 3)
+                .append("total", 42L)
+                .append("ratio", 0.5)
+                .append("active", true)
+                .append("missing", null)
+                .append("created", new Date(1436000000000L))
+                .append("tags", Arrays.asList("a", "b"))
+                .append("meta", new Document("rank", 7));
+        final String raw = transcode(document);
+        assertEquals(JSON.parse(JSON.serialize(document)), JSON.parse(raw));
+    }
+
+    /**
+     * Tests that 64 bit integers outside of the 32 bit range keep their exact value.
+     */
+    @Test
+    public void testLargeLong() {
+        final String raw = transcode(new Document("big", Long.MAX_VALUE));
+        assertTrue(raw.contains("\"$numberLong\" : \"" + Long.MAX_VALUE + "\""));
+        assertEquals(Long.MAX_VALUE, Document.parse(raw).get("big"));
+    }
+
+    /**
+     * Tests that the default codec registry can decode raw documents.
+     */
+    @Test
+    public void testCodecAvailable() {
+        assertNotNull(MongoClient.getDefaultCodecRegistry().get(RawBsonDocument.class));
+    }
+
+    private static String transcode(final Document document) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new DocumentCodec().encode(new BsonBinaryWriter(buffer), document,
+                EncoderContext.builder().build());
+        final StringWriter writer = new StringWriter();
+        RawJsonCursor.write(new RawBsonDocument(buffer.toByteArray()), writer,
+                RawJsonCursor.createDateFormat());
+        return writer.toString();
+    }
+
+}
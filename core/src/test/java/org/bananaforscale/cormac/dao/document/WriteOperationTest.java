@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.document;
+
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import org.bson.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the {@link WriteOperation} class.
+ */
+public class WriteOperationTest {
+
+    /**
+     * Tests that each form of operation is turned into the matching write model.
+     */
+    @Test
+    public void testParse() {
+        final WriteOperation insert = WriteOperation.parse("{\"insertOne\": {\"document\": {\"a\": 1}}}");
+        assertEquals(WriteOperation.INSERT_ONE, insert.getType());
+        assertTrue(insert.getModel() instanceof InsertOneModel);
+        assertNull(insert.getInsertedId());
+        final WriteOperation update = WriteOperation.parse(
+                "{\"updateOne\": {\"filter\": {\"a\": 1}, \"update\": {\"$inc\": {\"n\": 1}}, \"upsert\": true}}");
+        assertTrue(update.getModel() instanceof UpdateOneModel);
+        assertTrue(((UpdateOneModel<Document>) update.getModel()).getOptions().isUpsert());
+        final WriteOperation replace = WriteOperation.parse(
+                "{\"replaceOne\": {\"filter\": {\"a\": 1}, \"replacement\": {\"a\": 2}}}");
+        assertTrue(replace.getModel() instanceof ReplaceOneModel);
+        assertTrue(WriteOperation.parse("{\"deleteMany\": {\"filter\": {}}}").getModel() instanceof DeleteManyModel);
+    }
+
+    /**
+     * Tests that the identifier of an inserted document is reported once assigned.
+     */
+    @Test
+    public void testInsertedId() {
+        final WriteOperation insert = WriteOperation.parse("{\"insertOne\": {\"document\": {\"a\": 1}}}");
+        ((InsertOneModel<Document>) insert.getModel()).getDocument().put("_id", "x1");
+        assertEquals("x1", insert.getInsertedId());
+    }
+
+    /**
+     * Tests that unknown operations are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperation() {
+        WriteOperation.parse("{\"upsertOne\": {\"document\": {}}}");
+    }
+
+    /**
+     * Tests that an update without update operators is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateWithoutOperators() {
+        WriteOperation.parse("{\"updateMany\": {\"filter\": {}, \"update\": {\"a\": 1}}}");
+    }
+
+    /**
+     * Tests that an update made of operators is accepted as is and an empty one refused.
+     */
+    @Test
+    public void testRequireOperators() {
+        final Document update = Document.parse("{\"$set\": {\"a\": 1}, \"$unset\": {\"b\": \"\"}}");
+        assertEquals(update, WriteOperation.requireOperators(update));
+        try {
+            WriteOperation.requireOperators(new Document());
+            fail("An empty update was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that a replacement with update operators is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testReplacementWithOperators() {
+        WriteOperation.parse("{\"replaceOne\": {\"filter\": {}, \"replacement\": {\"$set\": {\"a\": 1}}}}");
+    }
+
+    /**
+     * Tests that an operation missing its filter is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingFilter() {
+        WriteOperation.parse("{\"deleteOne\": {}}");
+    }
+
+    /**
+     * Tests that several operations in one document are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeveralOperations() {
+        WriteOperation.parse("{\"deleteOne\": {\"filter\": {}}, \"deleteMany\": {\"filter\": {}}}");
+    }
+}
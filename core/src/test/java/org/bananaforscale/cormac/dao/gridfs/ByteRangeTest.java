@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.gridfs;
+
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ByteRange} class.
+ */
+public class ByteRangeTest {
+
+    /**
+     * Tests bounded, open ended and suffix ranges in one header.
+     */
+    @Test
+    public void testParse() {
+        final List<ByteRange> ranges = ByteRange.parse("bytes=0-99, 500-, -50", 1000);
+        assertEquals(3, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(99, ranges.get(0).getEnd());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals(500, ranges.get(1).getStart());
+        assertEquals(999, ranges.get(1).getEnd());
+        assertEquals(950, ranges.get(2).getStart());
+        assertEquals(999, ranges.get(2).getEnd());
+        assertEquals("bytes 950-999/1000", ranges.get(2).toContentRange(1000));
+    }
+
+    /**
+     * Tests that ranges are clipped to the file and unsatisfiable ones dropped.
+     */
+    @Test
+    public void testParseBounds() {
+        final List<ByteRange> ranges = ByteRange.parse("bytes=900-2000,-5000", 1000);
+        assertEquals(2, ranges.size());
+        assertEquals(999, ranges.get(0).getEnd());
+        assertEquals(0, ranges.get(1).getStart());
+        assertTrue(ByteRange.parse("bytes=1000-1100", 1000).isEmpty());
+    }
+
+    /**
+     * Tests that malformed headers are ignored.
+     */
+    @Test
+    public void testParseMalformed() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-1", 1000));
+        assertNull(ByteRange.parse("bytes=abc", 1000));
+        assertNull(ByteRange.parse("bytes=5-1", 1000));
+        assertNull(ByteRange.parse("bytes=x-1", 1000));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.dao.gridfs;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ChunkInputStream} class.
+ */
+public class ChunkInputStreamTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    /**
+     * Tests reading a range spanning the middle of several chunks.
+     */
+    @Test
+    public void testReadRange() throws IOException {
+        final byte[] file = "abcdefghijklmn".getBytes("US-ASCII");
+        final List<DBObject> chunks = chunks(file, 1, 3);
+        final boolean[] closed = new boolean[1];
+        final InputStream input = new ChunkInputStream(chunks.iterator(), new Closeable() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        }, CHUNK_SIZE, 5, 12);
+        assertArrayEquals("fghijklm".getBytes("US-ASCII"), readAll(input));
+        input.close();
+        assertTrue(closed[0]);
+    }
+
+    /**
+     * Tests that a gap in the chunks is reported rather than skipped.
+     */
+    @Test(expected = IOException.class)
+    public void testMissingChunk() throws IOException {
+        final byte[] file = "abcdefghijklmn".getBytes("US-ASCII");
+        final List<DBObject> chunks = chunks(file, 1, 3);
+        chunks.remove(1);
+        readAll(new ChunkInputStream(chunks.iterator(), null, CHUNK_SIZE, 5, 12));
+    }
+
+    private static List<DBObject> chunks(final byte[] file, final int first, final int last) {
+        final List<DBObject> chunks = new ArrayList<>();
+        for (int n = first; n <= last; n++) {
+            final int from = n * CHUNK_SIZE;
+            final byte[] data = new byte[Math.min(CHUNK_SIZE, file.length - from)];
+            System.arraycopy(file, from, data, 0, data.length);
+            chunks.add(new BasicDBObject("n", n).append("data", data));
+        }
+        return chunks;
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[3];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.standalone;
+
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.servlet.Servlets;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.util.Headers;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import javax.servlet.ServletException;
+import org.bananaforscale.cormac.CormacApplication;
+import org.bananaforscale.cormac.CormacContextServletListener;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.Options;
+
+/**
+ * Runs Cormac on an embedded Undertow server instead of a servlet container. The application is
+ * deployed as in the WAR, with {@link CormacContextServletListener} and {@link CormacApplication}
+ * behind the RESTEasy dispatcher, so it is configured by the same parameters as in web.xml. They
+ * are read from a properties file given as the first argument, and system properties take
+ * precedence as they do for the WAR.
+ * <p>
+ * The server itself is configured by:
+ * <ul>
+ * <li>http.host and http.port, the address to listen on, 0.0.0.0:8080 by default</li>
+ * <li>http.io.threads and http.worker.threads, the threads handling connections and running
+ * requests, 0 for the Undertow defaults of one IO thread per core and eight worker threads per IO
+ * thread</li>
+ * <li>http.keep.alive, whether connections are kept open for further requests, true by default;
+ * when false every response carries Connection: close and the connection is closed after it</li>
+ * <li>http.tcp.keep.alive, whether idle connections are probed by TCP keep-alive
+ * (SO_KEEPALIVE), true by default</li>
+ * <li>http.idle.timeout.ms, the time an idle connection is kept open, 60000 by default</li>
+ * <li>http.backlog, the number of connections waiting to be accepted, 1000 by default</li>
+ * </ul>
+ * Unless mongo.connect.background is set, the connection to MongoDB is verified in the background
+ * so that the server accepts connections as soon as it is deployed, and /rest/health/ready tells
+ * when it can serve requests.
+ */
+public class CormacLauncher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CormacLauncher.class);
+
+    private final Properties properties;
+    private DeploymentManager manager;
+    private Undertow server;
+
+    /**
+     * @param properties the settings of the server and of the application
+     */
+    public CormacLauncher(final Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Deploys the application and starts listening.
+     *
+     * @throws ServletException if the application fails to start
+     */
+    public synchronized void start() throws ServletException {
+        final long start = System.currentTimeMillis();
+        final DeploymentInfo deployment = Servlets.deployment()
+                .setClassLoader(CormacLauncher.class.getClassLoader())
+                .setContextPath("/")
+                .setDeploymentName("cormac")
+                .addListener(Servlets.listener(CormacContextServletListener.class))
+                .addServlet(Servlets.servlet("resteasy", HttpServlet30Dispatcher.class)
+                        .addInitParam("javax.ws.rs.Application", CormacApplication.class.getName())
+                        .setAsyncSupported(true)
+                        .setLoadOnStartup(1)
+                        .addMapping("/rest/*"));
+        deployment.addInitParameter("resteasy.servlet.mapping.prefix", "/rest");
+        deployment.addInitParameter("mongo.server", "localhost:27017");
+        deployment.addInitParameter("mongo.connect.background", "true");
+        for (String name : properties.stringPropertyNames()) {
+            deployment.addInitParameter(name, properties.getProperty(name));
+        }
+        manager = Servlets.defaultContainer().addDeployment(deployment);
+        manager.deploy();
+
+        final String host = getParameter("http.host", "0.0.0.0");
+        final int port = getIntParameter("http.port", 8080);
+        final int ioThreads = getIntParameter("http.io.threads", 0);
+        final int workerThreads = getIntParameter("http.worker.threads", 0);
+        final boolean keepAlive = Boolean.parseBoolean(getParameter("http.keep.alive", "true"));
+        final boolean tcpKeepAlive = Boolean.parseBoolean(getParameter("http.tcp.keep.alive", "true"));
+        final int idleTimeout = getIntParameter("http.idle.timeout.ms", 60000);
+        HttpHandler handler = Handlers.path().addPrefixPath("/", manager.start());
+        if (!keepAlive) {
+            handler = closeConnection(handler);
+        }
+        final Undertow.Builder builder = Undertow.builder()
+                .addHttpListener(port, host)
+                .setHandler(handler)
+                .setServerOption(UndertowOptions.ALWAYS_SET_KEEP_ALIVE, keepAlive)
+                .setServerOption(UndertowOptions.IDLE_TIMEOUT, idleTimeout)
+                .setSocketOption(Options.BACKLOG, getIntParameter("http.backlog", 1000))
+                .setSocketOption(Options.KEEP_ALIVE, tcpKeepAlive)
+                .setSocketOption(Options.TCP_NODELAY, true);
+        if (ioThreads > 0) {
+            builder.setIoThreads(ioThreads);
+        }
+        if (workerThreads > 0) {
+            builder.setWorkerThreads(workerThreads);
+        }
+        server = builder.build();
+        server.start();
+        logger.info("Cormac listening on " + host + ":" + port + " with " + (ioThreads > 0 ? ioThreads : "default")
+                + " IO threads, " + (workerThreads > 0 ? workerThreads : "default") + " worker threads, keep-alive: "
+                + keepAlive + ", idle timeout: " + idleTimeout + "ms, started in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Stops listening and undeploys the application, which closes the connection to MongoDB and
+     * flushes queued inserts.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+        if (manager != null) {
+            try {
+                manager.stop();
+            } catch (ServletException ex) {
+                logger.warn("Failed to stop the application", ex);
+            }
+            manager.undeploy();
+            manager = null;
+        }
+    }
+
+    /**
+     * Wraps a handler so that the connection is closed after each response.
+     *
+     * @param next the handler serving the requests
+     * @return the wrapping handler
+     */
+    private static HttpHandler closeConnection(final HttpHandler next) {
+        return new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                exchange.setPersistent(false);
+                exchange.getResponseHeaders().put(Headers.CONNECTION, "close");
+                next.handleRequest(exchange);
+            }
+        };
+    }
+
+    private String getParameter(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            value = properties.getProperty(name);
+        }
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    private int getIntParameter(String name, int defaultValue) {
+        String value = getParameter(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Starts Cormac and stops it when the JVM shuts down.
+     *
+     * @param args optionally the path of a properties file with the settings
+     * @throws IOException if the properties file can't be read
+     * @throws ServletException if the application fails to start
+     */
+    public static void main(String[] args) throws IOException, ServletException {
+        final Properties properties = new Properties();
+        if (args.length > 0) {
+            try (InputStream input = new FileInputStream(args[0])) {
+                properties.load(input);
+            }
+        }
+        final CormacLauncher launcher = new CormacLauncher(properties);
+        Runtime.getRuntime().addShutdownHook(new Thread("cormac-shutdown") {
+            @Override
+            public void run() {
+                launcher.stop();
+            }
+        });
+        launcher.start();
+    }
+}
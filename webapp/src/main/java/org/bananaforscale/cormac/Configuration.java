@@ -23,8 +23,42 @@ package org.bananaforscale.cormac;
 public class Configuration {
 
     private String mongoServer;
+    private int mongoPoolSize;
+    private int mongoPoolMinSize;
+    private int mongoPoolWaitQueueMultiple;
+    private int mongoPoolMaxWaitMillis;
+    private int mongoPoolMaxIdleMillis;
+    private int mongoPoolMaxLifeMillis;
+    private int mongoConnectTimeoutMillis;
+    private int mongoSocketTimeoutMillis;
+    private int mongoServerSelectionTimeoutMillis;
+    private int mongoHeartbeatFrequencyMillis;
+    private boolean mongoConnectBackground;
+    private int mongoConnectAttempts;
+    private long mongoConnectBackoffMillis;
+    private long mongoConnectBackoffMaxMillis;
+    private int warmUpIterations;
+    private String warmUpNamespace;
     private boolean useCORS;
     private boolean useUniqueIds;
+    private long namespaceCacheTtl;
+    private boolean documentPrecheck = true;
+    private boolean documentRawJson;
+    private long documentCacheSize;
+    private String documentCacheNamespaces;
+    private int documentBulkBatchSize;
+    private int documentImportThreads;
+    private int documentImportMaxInFlight;
+    private String concernDefaults;
+    private int resourceThreads;
+    private int resourceQueueSize;
+    private long resourceTimeoutMillis;
+    private boolean resourceVirtualThreads;
+    private int resourceMaxInFlight;
+    private String documentIngestNamespaces;
+    private int documentIngestCapacity;
+    private int documentIngestBatchSize;
+    private long documentIngestLingerMillis;
 
     public String getMongoServer() {
         return mongoServer;
@@ -34,6 +68,134 @@ public class Configuration {
         this.mongoServer = mongoServer;
     }
 
+    public int getMongoPoolSize() {
+        return mongoPoolSize;
+    }
+
+    public void setMongoPoolSize(int mongoPoolSize) {
+        this.mongoPoolSize = mongoPoolSize;
+    }
+
+    public int getMongoPoolMinSize() {
+        return mongoPoolMinSize;
+    }
+
+    public void setMongoPoolMinSize(int mongoPoolMinSize) {
+        this.mongoPoolMinSize = mongoPoolMinSize;
+    }
+
+    public int getMongoPoolWaitQueueMultiple() {
+        return mongoPoolWaitQueueMultiple;
+    }
+
+    public void setMongoPoolWaitQueueMultiple(int mongoPoolWaitQueueMultiple) {
+        this.mongoPoolWaitQueueMultiple = mongoPoolWaitQueueMultiple;
+    }
+
+    public int getMongoPoolMaxWaitMillis() {
+        return mongoPoolMaxWaitMillis;
+    }
+
+    public void setMongoPoolMaxWaitMillis(int mongoPoolMaxWaitMillis) {
+        this.mongoPoolMaxWaitMillis = mongoPoolMaxWaitMillis;
+    }
+
+    public int getMongoPoolMaxIdleMillis() {
+        return mongoPoolMaxIdleMillis;
+    }
+
+    public void setMongoPoolMaxIdleMillis(int mongoPoolMaxIdleMillis) {
+        this.mongoPoolMaxIdleMillis = mongoPoolMaxIdleMillis;
+    }
+
+    public int getMongoPoolMaxLifeMillis() {
+        return mongoPoolMaxLifeMillis;
+    }
+
+    public void setMongoPoolMaxLifeMillis(int mongoPoolMaxLifeMillis) {
+        this.mongoPoolMaxLifeMillis = mongoPoolMaxLifeMillis;
+    }
+
+    public int getMongoConnectTimeoutMillis() {
+        return mongoConnectTimeoutMillis;
+    }
+
+    public void setMongoConnectTimeoutMillis(int mongoConnectTimeoutMillis) {
+        this.mongoConnectTimeoutMillis = mongoConnectTimeoutMillis;
+    }
+
+    public int getMongoSocketTimeoutMillis() {
+        return mongoSocketTimeoutMillis;
+    }
+
+    public void setMongoSocketTimeoutMillis(int mongoSocketTimeoutMillis) {
+        this.mongoSocketTimeoutMillis = mongoSocketTimeoutMillis;
+    }
+
+    public int getMongoServerSelectionTimeoutMillis() {
+        return mongoServerSelectionTimeoutMillis;
+    }
+
+    public void setMongoServerSelectionTimeoutMillis(int mongoServerSelectionTimeoutMillis) {
+        this.mongoServerSelectionTimeoutMillis = mongoServerSelectionTimeoutMillis;
+    }
+
+    public int getMongoHeartbeatFrequencyMillis() {
+        return mongoHeartbeatFrequencyMillis;
+    }
+
+    public void setMongoHeartbeatFrequencyMillis(int mongoHeartbeatFrequencyMillis) {
+        this.mongoHeartbeatFrequencyMillis = mongoHeartbeatFrequencyMillis;
+    }
+
+    public boolean isMongoConnectBackground() {
+        return mongoConnectBackground;
+    }
+
+    public void setMongoConnectBackground(boolean mongoConnectBackground) {
+        this.mongoConnectBackground = mongoConnectBackground;
+    }
+
+    public int getMongoConnectAttempts() {
+        return mongoConnectAttempts;
+    }
+
+    public void setMongoConnectAttempts(int mongoConnectAttempts) {
+        this.mongoConnectAttempts = mongoConnectAttempts;
+    }
+
+    public long getMongoConnectBackoffMillis() {
+        return mongoConnectBackoffMillis;
+    }
+
+    public void setMongoConnectBackoffMillis(long mongoConnectBackoffMillis) {
+        this.mongoConnectBackoffMillis = mongoConnectBackoffMillis;
+    }
+
+    public long getMongoConnectBackoffMaxMillis() {
+        return mongoConnectBackoffMaxMillis;
+    }
+
+    public void setMongoConnectBackoffMaxMillis(long mongoConnectBackoffMaxMillis) {
+        this.mongoConnectBackoffMaxMillis = mongoConnectBackoffMaxMillis;
+    }
+
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    public void setWarmUpIterations(int warmUpIterations) {
+        this.warmUpIterations = warmUpIterations;
+    }
+
+    public String getWarmUpNamespace() {
+        return warmUpNamespace;
+    }
+
+    public void setWarmUpNamespace(String warmUpNamespace) {
+        this.warmUpNamespace = warmUpNamespace;
+    }
+
     public boolean isUseCORS() {
         return useCORS;
     }
@@ -50,4 +212,148 @@ public class Configuration {
         this.useUniqueIds = useUniqueIds;
     }
 
+    public long getNamespaceCacheTtl() {
+        return namespaceCacheTtl;
+    }
+
+    public void setNamespaceCacheTtl(long namespaceCacheTtl) {
+        this.namespaceCacheTtl = namespaceCacheTtl;
+    }
+
+    public boolean isDocumentPrecheck() {
+        return documentPrecheck;
+    }
+
+    public void setDocumentPrecheck(boolean documentPrecheck) {
+        this.documentPrecheck = documentPrecheck;
+    }
+
+    public boolean isDocumentRawJson() {
+        return documentRawJson;
+    }
+
+    public void setDocumentRawJson(boolean documentRawJson) {
+        this.documentRawJson = documentRawJson;
+    }
+
+    public long getDocumentCacheSize() {
+        return documentCacheSize;
+    }
+
+    public void setDocumentCacheSize(long documentCacheSize) {
+        this.documentCacheSize = documentCacheSize;
+    }
+
+    public String getDocumentCacheNamespaces() {
+        return documentCacheNamespaces;
+    }
+
+    public void setDocumentCacheNamespaces(String documentCacheNamespaces) {
+        this.documentCacheNamespaces = documentCacheNamespaces;
+    }
+
+    public int getDocumentBulkBatchSize() {
+        return documentBulkBatchSize;
+    }
+
+    public void setDocumentBulkBatchSize(int documentBulkBatchSize) {
+        this.documentBulkBatchSize = documentBulkBatchSize;
+    }
+
+    public int getDocumentImportThreads() {
+        return documentImportThreads;
+    }
+
+    public void setDocumentImportThreads(int documentImportThreads) {
+        this.documentImportThreads = documentImportThreads;
+    }
+
+    public int getDocumentImportMaxInFlight() {
+        return documentImportMaxInFlight;
+    }
+
+    public void setDocumentImportMaxInFlight(int documentImportMaxInFlight) {
+        this.documentImportMaxInFlight = documentImportMaxInFlight;
+    }
+
+    public int getResourceThreads() {
+        return resourceThreads;
+    }
+
+    public void setResourceThreads(int resourceThreads) {
+        this.resourceThreads = resourceThreads;
+    }
+
+    public int getResourceQueueSize() {
+        return resourceQueueSize;
+    }
+
+    public void setResourceQueueSize(int resourceQueueSize) {
+        this.resourceQueueSize = resourceQueueSize;
+    }
+
+    public long getResourceTimeoutMillis() {
+        return resourceTimeoutMillis;
+    }
+
+    public void setResourceTimeoutMillis(long resourceTimeoutMillis) {
+        this.resourceTimeoutMillis = resourceTimeoutMillis;
+    }
+
+    public boolean isResourceVirtualThreads() {
+        return resourceVirtualThreads;
+    }
+
+    public void setResourceVirtualThreads(boolean resourceVirtualThreads) {
+        this.resourceVirtualThreads = resourceVirtualThreads;
+    }
+
+    public int getResourceMaxInFlight() {
+        return resourceMaxInFlight;
+    }
+
+    public void setResourceMaxInFlight(int resourceMaxInFlight) {
+        this.resourceMaxInFlight = resourceMaxInFlight;
+    }
+
+    public String getConcernDefaults() {
+        return concernDefaults;
+    }
+
+    public void setConcernDefaults(String concernDefaults) {
+        this.concernDefaults = concernDefaults;
+    }
+
+    public String getDocumentIngestNamespaces() {
+        return documentIngestNamespaces;
+    }
+
+    public void setDocumentIngestNamespaces(String documentIngestNamespaces) {
+        this.documentIngestNamespaces = documentIngestNamespaces;
+    }
+
+    public int getDocumentIngestCapacity() {
+        return documentIngestCapacity;
+    }
+
+    public void setDocumentIngestCapacity(int documentIngestCapacity) {
+        this.documentIngestCapacity = documentIngestCapacity;
+    }
+
+    public int getDocumentIngestBatchSize() {
+        return documentIngestBatchSize;
+    }
+
+    public void setDocumentIngestBatchSize(int documentIngestBatchSize) {
+        this.documentIngestBatchSize = documentIngestBatchSize;
+    }
+
+    public long getDocumentIngestLingerMillis() {
+        return documentIngestLingerMillis;
+    }
+
+    public void setDocumentIngestLingerMillis(long documentIngestLingerMillis) {
+        this.documentIngestLingerMillis = documentIngestLingerMillis;
+    }
+
 }
@@ -19,15 +19,25 @@ import org.bananaforscale.cormac.resource.CollectionResource;
 import org.bananaforscale.cormac.resource.DatabaseResource;
 import org.bananaforscale.cormac.resource.DocumentResource;
 import org.bananaforscale.cormac.resource.GridFsResource;
+import org.bananaforscale.cormac.resource.HealthResource;
+import org.bananaforscale.cormac.resource.MetricsResource;
+import org.bananaforscale.cormac.resource.ResourceExecutor;
 import com.mongodb.MongoClient;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import javax.servlet.ServletContext;
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.Context;
+import org.bananaforscale.cormac.dao.ConcernPolicy;
+import org.bananaforscale.cormac.dao.DocumentCache;
+import org.bananaforscale.cormac.dao.NamespaceCache;
+import org.bananaforscale.cormac.dao.NamespaceFilter;
 import org.bananaforscale.cormac.dao.collection.CollectionDataServiceImpl;
 import org.bananaforscale.cormac.dao.database.DatabaseDataServiceImpl;
 import org.bananaforscale.cormac.dao.document.DocumentDataServiceImpl;
+import org.bananaforscale.cormac.dao.document.IngestQueue;
 import org.bananaforscale.cormac.dao.gridfs.GridFsDataServiceImpl;
 
 /**
@@ -47,10 +57,48 @@ public class CormacApplication extends Application {
      */
     public CormacApplication(@Context final ServletContext sc) {
         MongoClient mongoClient = (MongoClient) sc.getAttribute("mongo-client");;
-        singletons.add(new DatabaseResource(new DatabaseDataServiceImpl(mongoClient)));
-        singletons.add(new CollectionResource(new CollectionDataServiceImpl(mongoClient)));
-        singletons.add(new DocumentResource(new DocumentDataServiceImpl(mongoClient)));
-        singletons.add(new GridFsResource(new GridFsDataServiceImpl(mongoClient)));
+        Configuration conf = (Configuration) sc.getAttribute("cormac-configuration");
+        NamespaceCache namespaceCache = new NamespaceCache(conf.getNamespaceCacheTtl());
+        NamespaceFilter cachedNamespaces = NamespaceFilter.parse(conf.getDocumentCacheNamespaces());
+        DocumentCache documentCache = (conf.getDocumentCacheSize() > 0 && !cachedNamespaces.isEmpty())
+                ? new DocumentCache(conf.getDocumentCacheSize(), cachedNamespaces) : null;
+        ConcernPolicy concernPolicy = ConcernPolicy.parse(conf.getConcernDefaults());
+        // a platform pool bounds the operations itself, a virtual thread executor needs a limit
+        ExecutorService executor = (ExecutorService) sc.getAttribute("resource-executor");
+        ResourceExecutor resourceExecutor = new ResourceExecutor(executor,
+                executor instanceof ThreadPoolExecutor ? 0 : conf.getResourceMaxInFlight(), conf.getResourceTimeoutMillis());
+        DatabaseDataServiceImpl databaseDataService = new DatabaseDataServiceImpl(mongoClient, namespaceCache);
+        databaseDataService.setDocumentCache(documentCache);
+        singletons.add(new DatabaseResource(databaseDataService, resourceExecutor));
+        CollectionDataServiceImpl collectionDataService = new CollectionDataServiceImpl(mongoClient, namespaceCache);
+        collectionDataService.setDocumentCache(documentCache);
+        singletons.add(new CollectionResource(collectionDataService, resourceExecutor));
+        DocumentDataServiceImpl documentDataService = new DocumentDataServiceImpl(mongoClient, namespaceCache);
+        documentDataService.setPrecheck(conf.isDocumentPrecheck());
+        documentDataService.setRawJson(conf.isDocumentRawJson());
+        documentDataService.setBulkBatchSize(conf.getDocumentBulkBatchSize());
+        documentDataService.setImportExecutor((ExecutorService) sc.getAttribute("import-executor"));
+        documentDataService.setImportMaxInFlight(conf.getDocumentImportMaxInFlight());
+        documentDataService.setDocumentCache(documentCache);
+        documentDataService.setConcernPolicy(concernPolicy);
+        NamespaceFilter ingestNamespaces = NamespaceFilter.parse(conf.getDocumentIngestNamespaces());
+        IngestQueue ingestQueue = null;
+        if (!ingestNamespaces.isEmpty()) {
+            ingestQueue = new IngestQueue(mongoClient, concernPolicy, namespaceCache, ingestNamespaces,
+                    conf.getDocumentIngestCapacity(), conf.getDocumentIngestBatchSize(),
+                    conf.getDocumentIngestLingerMillis());
+            ingestQueue.start();
+            sc.setAttribute("ingest-queue", ingestQueue);
+        }
+        documentDataService.setIngestQueue(ingestQueue);
+        singletons.add(new DocumentResource(documentDataService, resourceExecutor));
+        GridFsDataServiceImpl gridFsDataService = new GridFsDataServiceImpl(mongoClient, namespaceCache);
+        gridFsDataService.setConcernPolicy(concernPolicy);
+        singletons.add(new GridFsResource(gridFsDataService, resourceExecutor));
+        Readiness readiness = (Readiness) sc.getAttribute("readiness");
+        singletons.add(new HealthResource(readiness));
+        singletons.add(new MetricsResource(namespaceCache, documentCache, ingestQueue, readiness,
+                resourceExecutor));
     }
 
     /**
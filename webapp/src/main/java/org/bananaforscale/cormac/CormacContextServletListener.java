@@ -16,9 +16,21 @@
 package org.bananaforscale.cormac;
 
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import org.bananaforscale.cormac.dao.document.DocumentDataServiceImpl;
+import org.bananaforscale.cormac.dao.document.IngestQueue;
+import org.bananaforscale.cormac.resource.WarmUp;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +44,10 @@ public class CormacContextServletListener implements ServletContextListener {
             LoggerFactory.getLogger(CormacContextServletListener.class);
 
     private MongoClient mongoClient;
+    private ExecutorService importExecutor;
+    private ExecutorService resourceExecutor;
+    private Readiness readiness;
+    private Thread startupThread;
 
     /**
      * {@inheritDoc}
@@ -40,12 +56,125 @@ public class CormacContextServletListener implements ServletContextListener {
     public void contextInitialized(final ServletContextEvent sce) {
         logger.info("Initializing the Cormac Web Application");
         Configuration conf = loadConfiguration(sce);
-        mongoClient = new MongoClient(conf.getMongoServer());
+        mongoClient = new MongoClient(new ServerAddress(conf.getMongoServer()), buildClientOptions(conf));
         logger.info("Starting Mongo with address: " + conf.getMongoServer());
 
-        // TODO: add in a connection retry
         final ServletContext context = sce.getServletContext();
+        readiness = new Readiness();
         context.setAttribute("mongo-client", mongoClient);
+        context.setAttribute("cormac-configuration", conf);
+        context.setAttribute("readiness", readiness);
+        if (conf.getDocumentImportThreads() > 0) {
+            importExecutor = Executors.newFixedThreadPool(conf.getDocumentImportThreads());
+            context.setAttribute("import-executor", importExecutor);
+        }
+        if (conf.isResourceVirtualThreads()) {
+            resourceExecutor = newVirtualThreadExecutor();
+        }
+        if (resourceExecutor == null && conf.getResourceThreads() > 0) {
+            resourceExecutor = new ThreadPoolExecutor(conf.getResourceThreads(), conf.getResourceThreads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, conf.getResourceQueueSize())));
+        }
+        if (resourceExecutor != null) {
+            context.setAttribute("resource-executor", resourceExecutor);
+        }
+        if (conf.isMongoConnectBackground()) {
+            startInBackground(conf);
+        } else if (!startUp(conf, conf.getMongoConnectAttempts())) {
+            logger.error("Mongo is not reachable after " + conf.getMongoConnectAttempts()
+                    + " attempts, deploying anyway and retrying in the background");
+            startInBackground(conf);
+        }
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task. Virtual threads need Java 21, while
+     * the sources target Java 7, so the executor is looked up reflectively.
+     *
+     * @return the executor, or {@code null} if the JVM has no virtual threads
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Running requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException ex) {
+            logger.warn("Virtual threads need Java 21 or later, running requests on platform threads");
+            return null;
+        }
+    }
+
+    /**
+     * Verifies the connection to MongoDB, retrying with an exponential backoff, then warms up and
+     * marks the application ready.
+     *
+     * @param conf the configuration
+     * @param attempts the maximum number of attempts, 0 to retry until interrupted
+     * @return {@code true} if the application is ready, otherwise {@code false}
+     */
+    private boolean startUp(Configuration conf, int attempts) {
+        long backoff = Math.max(1, conf.getMongoConnectBackoffMillis());
+        for (int attempt = 1; attempts <= 0 || attempt <= attempts; attempt++) {
+            try {
+                mongoClient.getDatabase("admin").runCommand(new Document("ping", 1));
+                readiness.warmingUp();
+                logger.info("Connected to Mongo after " + readiness.getConnectAttempts() + " attempts");
+                warmUp(conf);
+                readiness.ready();
+                logger.info("Ready in " + readiness.getStartupMillis() + "ms");
+                return true;
+            } catch (MongoException ex) {
+                readiness.connectFailed(ex.getMessage());
+                logger.warn("Connection attempt " + readiness.getConnectAttempts() + " to Mongo failed: "
+                        + ex.getMessage());
+            }
+            if (attempt == attempts) {
+                break;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(backoff * 2, Math.max(backoff, conf.getMongoConnectBackoffMaxMillis()));
+        }
+        return false;
+    }
+
+    /**
+     * Opens the minimum number of pool connections and runs synthetic reads through the document
+     * data service and the serialization of the resources, if enabled.
+     */
+    private void warmUp(Configuration conf) {
+        if (conf.getWarmUpIterations() <= 0) {
+            return;
+        }
+        DocumentDataServiceImpl documentDataService = new DocumentDataServiceImpl(mongoClient);
+        documentDataService.setPrecheck(conf.isDocumentPrecheck());
+        documentDataService.setRawJson(conf.isDocumentRawJson());
+        WarmUp warmUp = new WarmUp(mongoClient, documentDataService, conf.getMongoPoolMinSize(),
+                conf.getWarmUpNamespace(), conf.getWarmUpIterations());
+        warmUp.run();
+        readiness.warmedUp(warmUp.getDurationMillis(), warmUp.getColdMillis(), warmUp.getWarmMillis());
+        logger.info("Warmed up in " + warmUp.getDurationMillis() + "ms, first iteration: " + warmUp.getColdMillis()
+                + "ms, last iterations: " + warmUp.getWarmMillis() + "ms");
+    }
+
+    /**
+     * Starts the application in a background thread, so that deployment completes at once while
+     * the readiness endpoint reports the application as not ready.
+     */
+    private void startInBackground(final Configuration conf) {
+        startupThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                startUp(conf, 0);
+            }
+        }, "cormac-startup");
+        startupThread.setDaemon(true);
+        startupThread.start();
     }
 
     /**
@@ -54,6 +183,45 @@ public class CormacContextServletListener implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         logger.info("Shutting down the Cormac Web Application");
+        if (startupThread != null) {
+            startupThread.interrupt();
+        }
+        IngestQueue ingestQueue = (IngestQueue) sce.getServletContext().getAttribute("ingest-queue");
+        if (ingestQueue != null) {
+            try {
+                int unflushed = ingestQueue.close(TimeUnit.SECONDS.toMillis(30));
+                if (unflushed > 0) {
+                    logger.warn(unflushed + " queued documents were not inserted at shutdown");
+                }
+            } catch (InterruptedException ex) {
+                logger.warn(ingestQueue.getDepth() + " queued documents were not inserted at shutdown");
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (resourceExecutor != null) {
+            resourceExecutor.shutdown();
+            try {
+                if (!resourceExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warn("Requests still running at shutdown were abandoned");
+                    resourceExecutor.shutdownNow();
+                }
+            } catch (InterruptedException ex) {
+                resourceExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (importExecutor != null) {
+            importExecutor.shutdown();
+            try {
+                if (!importExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warn("Imports still running at shutdown were abandoned");
+                    importExecutor.shutdownNow();
+                }
+            } catch (InterruptedException ex) {
+                importExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
         if (mongoClient != null) {
             mongoClient.close();
         }
@@ -61,10 +229,116 @@ public class CormacContextServletListener implements ServletContextListener {
 
     private Configuration loadConfiguration(ServletContextEvent sce) {
         Configuration conf = new Configuration();
-        String mongoServer = System.getProperty("mongo.server");
-        mongoServer = (mongoServer == null || mongoServer.isEmpty())
-                ? sce.getServletContext().getInitParameter("mongo.server") : mongoServer;
-        conf.setMongoServer(mongoServer);
+        conf.setMongoServer(getParameter(sce, "mongo.server"));
+        conf.setMongoPoolSize((int) getLongParameter(sce, "mongo.pool.size", 100));
+        conf.setMongoPoolMinSize((int) getLongParameter(sce, "mongo.pool.min.size", 0));
+        conf.setMongoPoolWaitQueueMultiple((int) getLongParameter(sce, "mongo.pool.wait.queue.multiple", 5));
+        conf.setMongoPoolMaxWaitMillis((int) getLongParameter(sce, "mongo.pool.max.wait.ms", 120000));
+        conf.setMongoPoolMaxIdleMillis((int) getLongParameter(sce, "mongo.pool.max.idle.ms", 0));
+        conf.setMongoPoolMaxLifeMillis((int) getLongParameter(sce, "mongo.pool.max.life.ms", 0));
+        logger.info("Connection pool size: " + conf.getMongoPoolMinSize() + " to " + conf.getMongoPoolSize()
+                + ", wait queue multiple: " + conf.getMongoPoolWaitQueueMultiple()
+                + ", max wait: " + conf.getMongoPoolMaxWaitMillis()
+                + "ms, max idle time: " + conf.getMongoPoolMaxIdleMillis()
+                + "ms, max life time: " + conf.getMongoPoolMaxLifeMillis() + "ms");
+        conf.setMongoConnectTimeoutMillis((int) getLongParameter(sce, "mongo.connect.timeout.ms", 10000));
+        conf.setMongoSocketTimeoutMillis((int) getLongParameter(sce, "mongo.socket.timeout.ms", 0));
+        conf.setMongoServerSelectionTimeoutMillis((int) getLongParameter(sce, "mongo.server.selection.timeout.ms", 30000));
+        conf.setMongoHeartbeatFrequencyMillis((int) getLongParameter(sce, "mongo.heartbeat.frequency.ms", 10000));
+        logger.info("Connect timeout: " + conf.getMongoConnectTimeoutMillis()
+                + "ms, socket timeout: " + conf.getMongoSocketTimeoutMillis()
+                + "ms, server selection timeout: " + conf.getMongoServerSelectionTimeoutMillis()
+                + "ms, heartbeat frequency: " + conf.getMongoHeartbeatFrequencyMillis() + "ms");
+        conf.setMongoConnectBackground(getBooleanParameter(sce, "mongo.connect.background", true));
+        conf.setMongoConnectAttempts((int) getLongParameter(sce, "mongo.connect.attempts", 5));
+        conf.setMongoConnectBackoffMillis(getLongParameter(sce, "mongo.connect.backoff.ms", 500));
+        conf.setMongoConnectBackoffMaxMillis(getLongParameter(sce, "mongo.connect.backoff.max.ms", 10000));
+        conf.setWarmUpIterations((int) getLongParameter(sce, "warmup.iterations", 0));
+        conf.setWarmUpNamespace(getParameter(sce, "warmup.namespace"));
+        logger.info("Warm-up iterations: " + conf.getWarmUpIterations() + " reading " + conf.getWarmUpNamespace());
+        logger.info("Connect in the background: " + conf.isMongoConnectBackground()
+                + ", attempts: " + conf.getMongoConnectAttempts() + ", backoff: "
+                + conf.getMongoConnectBackoffMillis() + "ms to " + conf.getMongoConnectBackoffMaxMillis() + "ms");
+        conf.setNamespaceCacheTtl(getLongParameter(sce, "namespace.cache.ttl", 0));
+        logger.info("Namespace cache time to live: " + conf.getNamespaceCacheTtl() + "ms");
+        conf.setDocumentPrecheck(getBooleanParameter(sce, "document.precheck", true));
+        logger.info("Document existence prechecks enabled: " + conf.isDocumentPrecheck());
+        conf.setDocumentRawJson(getBooleanParameter(sce, "document.raw.json", false));
+        logger.info("Raw BSON document listings enabled: " + conf.isDocumentRawJson());
+        conf.setDocumentCacheSize(getLongParameter(sce, "document.cache.size", 0));
+        conf.setDocumentCacheNamespaces(getParameter(sce, "document.cache.namespaces"));
+        logger.info("Document cache size: " + conf.getDocumentCacheSize() + " bytes for "
+                + conf.getDocumentCacheNamespaces());
+        conf.setDocumentBulkBatchSize((int) getLongParameter(sce, "document.bulk.batch.size", 1000));
+        logger.info("Bulk insert batch size: " + conf.getDocumentBulkBatchSize());
+        conf.setDocumentImportThreads((int) getLongParameter(sce, "document.import.threads", 4));
+        conf.setDocumentImportMaxInFlight((int) getLongParameter(sce, "document.import.max.in.flight", 4));
+        logger.info("Import threads: " + conf.getDocumentImportThreads() + ", batches in flight per import: "
+                + conf.getDocumentImportMaxInFlight());
+        conf.setResourceThreads((int) getLongParameter(sce, "resource.threads", 0));
+        conf.setResourceQueueSize((int) getLongParameter(sce, "resource.queue.size", 1000));
+        conf.setResourceTimeoutMillis(getLongParameter(sce, "resource.timeout.ms", 30000));
+        conf.setResourceVirtualThreads(getBooleanParameter(sce, "resource.virtual.threads", false));
+        conf.setResourceMaxInFlight((int) getLongParameter(sce, "resource.max.in.flight", 500));
+        logger.info("Request threads: " + conf.getResourceThreads() + ", queue size: " + conf.getResourceQueueSize()
+                + ", timeout: " + conf.getResourceTimeoutMillis() + "ms, virtual threads: "
+                + conf.isResourceVirtualThreads() + " with at most " + conf.getResourceMaxInFlight() + " in flight");
+        conf.setConcernDefaults(getParameter(sce, "concern.defaults"));
+        logger.info("Write concern and read preference defaults: " + conf.getConcernDefaults());
+        conf.setDocumentIngestNamespaces(getParameter(sce, "document.ingest.namespaces"));
+        conf.setDocumentIngestCapacity((int) getLongParameter(sce, "document.ingest.capacity", 10000));
+        conf.setDocumentIngestBatchSize((int) getLongParameter(sce, "document.ingest.batch.size", 500));
+        conf.setDocumentIngestLingerMillis(getLongParameter(sce, "document.ingest.linger.ms", 100));
+        logger.info("Asynchronous inserts for " + conf.getDocumentIngestNamespaces() + ", queue capacity: "
+                + conf.getDocumentIngestCapacity() + ", batch size: " + conf.getDocumentIngestBatchSize()
+                + ", linger: " + conf.getDocumentIngestLingerMillis() + "ms");
         return conf;
     }
+
+    /**
+     * Builds the options of the MongoDB client from the configuration. A value of 0 for the
+     * socket, idle and life times means no limit.
+     */
+    private MongoClientOptions buildClientOptions(Configuration conf) {
+        return MongoClientOptions.builder()
+                .connectionsPerHost(conf.getMongoPoolSize())
+                .minConnectionsPerHost(conf.getMongoPoolMinSize())
+                .threadsAllowedToBlockForConnectionMultiplier(conf.getMongoPoolWaitQueueMultiple())
+                .maxWaitTime(conf.getMongoPoolMaxWaitMillis())
+                .maxConnectionIdleTime(conf.getMongoPoolMaxIdleMillis())
+                .maxConnectionLifeTime(conf.getMongoPoolMaxLifeMillis())
+                .connectTimeout(conf.getMongoConnectTimeoutMillis())
+                .socketTimeout(conf.getMongoSocketTimeoutMillis())
+                .serverSelectionTimeout(conf.getMongoServerSelectionTimeoutMillis())
+                .heartbeatFrequency(conf.getMongoHeartbeatFrequencyMillis())
+                .build();
+    }
+
+    /**
+     * Reads a configuration value, giving precedence to system properties over the servlet
+     * context init parameters.
+     */
+    private String getParameter(ServletContextEvent sce, String name) {
+        String value = System.getProperty(name);
+        return (value == null || value.isEmpty())
+                ? sce.getServletContext().getInitParameter(name) : value;
+    }
+
+    private boolean getBooleanParameter(ServletContextEvent sce, String name, boolean defaultValue) {
+        String value = getParameter(sce, name);
+        return (value == null || value.isEmpty()) ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private long getLongParameter(ServletContextEvent sce, String name, long defaultValue) {
+        String value = getParameter(sce, name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac;
+
+/**
+ * Tracks whether the web application is ready to take traffic. The application is alive as soon
+ * as it is deployed, but only ready once the connection to MongoDB has been verified and the
+ * warm-up, if any, has completed.
+ */
+public class Readiness {
+
+    /**
+     * The stages of the startup of the application.
+     */
+    public enum State {
+
+        /**
+         * Waiting for MongoDB to answer.
+         */
+        CONNECTING,
+        /**
+         * Opening connections and running synthetic traffic.
+         */
+        WARMING_UP,
+        /**
+         * Ready to take traffic.
+         */
+        READY
+    }
+
+    private final long createdMillis = System.currentTimeMillis();
+    private volatile State state = State.CONNECTING;
+    private volatile int connectAttempts;
+    private volatile String lastError;
+    private volatile long readyMillis;
+    private volatile long warmUpMillis = -1;
+    private volatile double coldLatencyMillis;
+    private volatile double warmLatencyMillis;
+
+    /**
+     * @return the current stage
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return {@code true} if the application is ready to take traffic, otherwise {@code false}
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * Records a failed attempt to reach MongoDB.
+     *
+     * @param error the reason of the failure
+     */
+    public void connectFailed(final String error) {
+        connectAttempts++;
+        lastError = error;
+    }
+
+    /**
+     * Records the successful attempt to reach MongoDB and starts the warm-up.
+     */
+    public void warmingUp() {
+        connectAttempts++;
+        lastError = null;
+        state = State.WARMING_UP;
+    }
+
+    /**
+     * Records the outcome of the warm-up.
+     *
+     * @param durationMillis the time in milliseconds taken by the warm-up
+     * @param coldLatencyMillis the time in milliseconds taken by the first iteration
+     * @param warmLatencyMillis the average time in milliseconds taken by the last iterations
+     */
+    public void warmedUp(final long durationMillis, final double coldLatencyMillis,
+            final double warmLatencyMillis) {
+        this.warmUpMillis = durationMillis;
+        this.coldLatencyMillis = coldLatencyMillis;
+        this.warmLatencyMillis = warmLatencyMillis;
+    }
+
+    /**
+     * Marks the application ready to take traffic.
+     */
+    public void ready() {
+        readyMillis = System.currentTimeMillis();
+        state = State.READY;
+    }
+
+    /**
+     * @return the number of attempts made to reach MongoDB
+     */
+    public int getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    /**
+     * @return the reason of the last failed attempt, or {@code null} if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the time in milliseconds from deployment until ready, or -1 if not ready yet
+     */
+    public long getStartupMillis() {
+        return state == State.READY ? readyMillis - createdMillis : -1;
+    }
+
+    /**
+     * @return the time in milliseconds taken by the warm-up, or -1 if it didn't run
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    /**
+     * @return the time in milliseconds taken by the first warm-up iteration
+     */
+    public double getColdLatencyMillis() {
+        return coldLatencyMillis;
+    }
+
+    /**
+     * @return the average time in milliseconds taken by the last warm-up iterations
+     */
+    public double getWarmLatencyMillis() {
+        return warmLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Readiness{" + "state=" + state + ", connectAttempts=" + connectAttempts
+                + ", lastError=" + lastError + '}';
+    }
+}
@@ -16,6 +16,7 @@
 package org.bananaforscale.cormac.resource;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 import org.bananaforscale.cormac.dao.collection.CollectionDataService;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.DELETE;
@@ -25,6 +26,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
@@ -43,32 +46,39 @@ public class CollectionResource {
 
     private static final Logger logger = LoggerFactory.getLogger(CollectionResource.class);
     private final CollectionDataService cds;
+    private final ResourceExecutor executor;
     @Context
     HttpServletRequest request;
 
-    public CollectionResource(CollectionDataService cds) {
+    public CollectionResource(CollectionDataService cds, ResourceExecutor executor) {
         this.cds = cds;
+        this.executor = executor;
     }
 
     /**
      * Returns the names of all collections in this database.
      *
      * @param databaseName the database
-     * @return the names of collections in this database
+     * @param asyncResponse resumed with the names of collections in this database
      */
     @GET
     @Path("{databaseName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCollections(@PathParam("databaseName") String databaseName) {
-        try {
-            List<String> collectionList = cds.getCollections(databaseName);
-            return Response.ok(collectionList).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
-
+    public void getCollections(@PathParam("databaseName") final String databaseName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> collectionList = cds.getCollections(databaseName);
+                    return Response.ok(collectionList).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -78,23 +88,29 @@ public class CollectionResource {
      *
      * @param databaseName the database
      * @param collectionName the collection to create
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @PUT
     @Path("{databaseName}/{collectionName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addCollection(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName) {
-        try {
-            boolean result = cds.addCollection(databaseName, collectionName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (ExistsException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void addCollection(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = cds.addCollection(databaseName, collectionName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (ExistsException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -102,21 +118,27 @@ public class CollectionResource {
      *
      * @param databaseName the database
      * @param collectionName the collection to delete
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}/{collectionName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeCollection(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName) {
-        try {
-            boolean result = cds.removeCollection(databaseName, collectionName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeCollection(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = cds.removeCollection(databaseName, collectionName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
 }
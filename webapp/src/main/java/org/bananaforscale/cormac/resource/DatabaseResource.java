@@ -16,6 +16,7 @@
 package org.bananaforscale.cormac.resource;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 import org.bananaforscale.cormac.dao.database.DatabaseDataService;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.DELETE;
@@ -25,6 +26,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
@@ -45,27 +48,33 @@ public class DatabaseResource {
     @Context
     HttpServletRequest request;
     DatabaseDataService dds;
+    ResourceExecutor executor;
 
-    public DatabaseResource(DatabaseDataService dds) {
+    public DatabaseResource(DatabaseDataService dds, ResourceExecutor executor) {
         this.dds = dds;
+        this.executor = executor;
     }
 
     /**
      * Returns a list of all database names present on the server.
      *
-     * @return the names of databases present on this server
+     * @param asyncResponse resumed with the names of databases present on this server
      */
     @GET
     @Path("")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getDatabases() {
-        try {
-            List<String> databaseList = dds.getDatabases();
-            return Response.ok(databaseList).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
-
+    public void getDatabases(@Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> databaseList = dds.getDatabases();
+                    return Response.ok(databaseList).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -74,60 +83,78 @@ public class DatabaseResource {
      * method is not required for usage of said database.
      *
      * @param databaseName the database to create
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @PUT
     @Path("{databaseName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addDatabase(@PathParam("databaseName") String databaseName) {
-        try {
-            boolean result = dds.addDatabase(databaseName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (ExistsException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void addDatabase(@PathParam("databaseName") final String databaseName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = dds.addDatabase(databaseName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (ExistsException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
      * Removes a database with a given name.
      *
      * @param databaseName the database
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeDatabase(@PathParam("databaseName") String databaseName) {
-        try {
-            boolean result = dds.removeDatabase(databaseName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeDatabase(@PathParam("databaseName") final String databaseName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = dds.removeDatabase(databaseName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
      * Returns statistics that reflect the use state of a single database.
      *
      * @param databaseName the database
-     * @return A document with statistics reflecting the database system’s
+     * @param asyncResponse resumed with A document with statistics reflecting the database system’s
      * state.
      */
     @GET
     @Path("{databaseName}/stats")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getDatabaseStats(@PathParam("databaseName") String databaseName) {
-        try {
-            String result = dds.getDatabaseStats(databaseName);
-            return Response.ok(result).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void getDatabaseStats(@PathParam("databaseName") final String databaseName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String result = dds.getDatabaseStats(databaseName);
+                    return Response.ok(result).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 }
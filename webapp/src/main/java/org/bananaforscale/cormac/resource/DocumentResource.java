@@ -15,9 +15,28 @@
  */
 package org.bananaforscale.cormac.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.bananaforscale.cormac.dao.ConcernOptions;
+import org.bananaforscale.cormac.dao.document.BulkInsertResult;
+import org.bananaforscale.cormac.dao.document.BulkWriteSummary;
+import org.bananaforscale.cormac.dao.document.DocumentBatch;
+import org.bananaforscale.cormac.dao.document.DocumentCursor;
 import org.bananaforscale.cormac.dao.document.DocumentDataService;
+import org.bananaforscale.cormac.dao.document.DocumentPage;
+import org.bananaforscale.cormac.dao.document.ImportResult;
+import org.bananaforscale.cormac.dao.document.JsonDocumentReader;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
@@ -27,11 +46,19 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.NotFoundException;
+import org.bananaforscale.cormac.exception.datasource.QueueFullException;
 import org.bananaforscale.cormac.exception.serialization.DeserializeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,12 +72,36 @@ import org.slf4j.LoggerFactory;
 public class DocumentResource {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentResource.class);
+    /**
+     * Response header carrying the continuation token of a keyset paginated listing.
+     */
+    static final String CONTINUATION_HEADER = "X-Continuation-Token";
     private final DocumentDataService dds;
+    private final ResourceExecutor executor;
     @Context
     HttpServletRequest request;
+    @Context
+    UriInfo uriInfo;
 
-    public DocumentResource(DocumentDataService dds) {
+    public DocumentResource(DocumentDataService dds, ResourceExecutor executor) {
         this.dds = dds;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the data service to use for the current request, applying the
+     * write concern and read preference given with the optional "w", "j",
+     * "wtimeout" and "readPreference" query parameters. The parameters are
+     * read on the request thread, as the injected {@link UriInfo} can't be
+     * used from the thread running the operation.
+     *
+     * @param parameters the query parameters of the request
+     * @return the data service
+     * @throws IllegalArgumentException if one of the parameters is invalid
+     */
+    private DocumentDataService dds(MultivaluedMap<String, String> parameters) {
+        ConcernOptions concern = ResourceUtil.concernOptions(parameters);
+        return concern.isEmpty() ? dds : dds.withConcern(concern);
     }
 
     /**
@@ -58,32 +109,38 @@ public class DocumentResource {
      *
      * @param databaseName the database
      * @param collectionName the collection
-     * @param fields fields to return (not working yet)
+     * @param fields comma separated field paths to return, prefixed with "-"
+     * to exclude them instead
      * @param skip the amount of cases to skip
      * @param limit the amount of cases to limit the result to
      * @param orderBy order ascending or descending by property
      * @param includeId determines whether to include the Mongo "_id" field
-     * @return the documents in a collection
+     * @param keyset requests the first page of a keyset paginated listing
+     * @param continuation the continuation token of the previous page
+     * @param req the request, used to evaluate preconditions on keyset pages
+     * @param asyncResponse resumed with the documents in a collection
      */
     @GET
     @Path("{databaseName}/{collectionName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAll(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName,
-            @QueryParam("fields") String fields,
-            @QueryParam("skip") String skip,
-            @QueryParam("limit") String limit,
-            @QueryParam("orderBy") String orderBy,
-            @QueryParam("includeId") String includeId) {
-        try {
-            boolean include = Boolean.valueOf(includeId);
-            List<String> documentList = dds.getAll(databaseName, collectionName, null, fields, skip, limit, orderBy, include);
-            return Response.ok(ResourceUtil.createJsonArray(documentList)).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void getAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("fields") final String fields,
+            @QueryParam("skip") final String skip,
+            @QueryParam("limit") final String limit,
+            @QueryParam("orderBy") final String orderBy,
+            @QueryParam("includeId") final String includeId,
+            @QueryParam("keyset") final String keyset,
+            @QueryParam("continuation") final String continuation,
+            @Context final Request req,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                return findAll(parameters, databaseName, collectionName, null, fields, skip, limit, orderBy, includeId, keyset, continuation, req);
+            }
+        });
     }
 
     /**
@@ -93,30 +150,73 @@ public class DocumentResource {
      * @param databaseName the database
      * @param collectionName the collection
      * @param query a JSON query param in the style of mongo
-     * @param fields fields to return
+     * @param fields comma separated field paths to return, prefixed with "-"
+     * to exclude them instead
      * @param skip the amount of cases to skip
      * @param limit the amount of cases to limit the result to
      * @param orderBy order ascending or descending by property
      * @param includeId determines whether to include the Mongo "_id" field
-     * @return the documents in a collection
+     * @param keyset requests the first page of a keyset paginated listing
+     * @param continuation the continuation token of the previous page
+     * @param asyncResponse resumed with the documents in a collection
      */
     @POST
     @Path("{databaseName}/{collectionName}/query")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response queryAll(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName,
-            @QueryParam("fields") String fields,
-            @QueryParam("skip") String skip,
-            @QueryParam("limit") String limit,
-            @QueryParam("orderBy") String orderBy,
-            @QueryParam("includeId") String includeId,
-            String query) {
+    public void queryAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("fields") final String fields,
+            @QueryParam("skip") final String skip,
+            @QueryParam("limit") final String limit,
+            @QueryParam("orderBy") final String orderBy,
+            @QueryParam("includeId") final String includeId,
+            @QueryParam("keyset") final String keyset,
+            @QueryParam("continuation") final String continuation,
+            final String query,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                return findAll(parameters, databaseName, collectionName, query, fields, skip, limit, orderBy, includeId, keyset, continuation, null);
+            }
+        });
+    }
+
+    /**
+     * Builds the response for a document listing. A keyset paginated listing
+     * returns a single page of at most limit documents; when more documents
+     * follow, the token to request them is returned in the
+     * {@value #CONTINUATION_HEADER} header and passed back through the
+     * continuation parameter. Otherwise all matching documents are streamed
+     * to the client. Pages carry an entity tag and are answered with 304 Not
+     * Modified when a request with preconditions still holds them; streamed
+     * listings are written before their hash is known and carry none.
+     */
+    private Response findAll(MultivaluedMap<String, String> parameters, String databaseName,
+            String collectionName, String query, String fields, String skip, String limit, String orderBy, String includeId,
+            String keyset, String continuation, Request req) {
         try {
             boolean include = Boolean.valueOf(includeId);
-            List<String> documentList = dds.getAll(databaseName, collectionName, query, fields, skip, limit, orderBy, include);
-            return Response.ok(ResourceUtil.createJsonArray(documentList)).build();
+            if (Boolean.valueOf(keyset) || continuation != null) {
+                DocumentPage page = dds(parameters).getPage(databaseName, collectionName, query, fields, limit, orderBy, include, continuation);
+                String content = ResourceUtil.createJsonArray(page.getDocuments());
+                EntityTag tag = ResourceUtil.entityTag(content + page.getContinuationToken());
+                Response.ResponseBuilder builder = req == null ? null : req.evaluatePreconditions(tag);
+                if (builder == null) {
+                    builder = Response.ok(content);
+                }
+                if (page.getContinuationToken() != null) {
+                    builder.header(CONTINUATION_HEADER, page.getContinuationToken());
+                }
+                return builder.tag(tag).build();
+            }
+            DocumentCursor cursor = dds(parameters).openAll(databaseName, collectionName, query, fields, skip, limit, orderBy, include);
+            return Response.ok(ResourceUtil.streamJsonArray(cursor)).build();
         } catch (DatasourceException ex) {
             return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+        } catch (IllegalArgumentException ex) {
+            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
         } catch (NotFoundException ex) {
             return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
         }
@@ -128,22 +228,86 @@ public class DocumentResource {
      * @param databaseName the database
      * @param collectionName the collection
      * @param documentId the document identifier to query for
-     * @return the document of the given identifier
+     * @param req the request, used to evaluate preconditions
+     * @param asyncResponse resumed with the document of the given identifier, or 304 Not Modified if
+     * the entity tag sent with If-None-Match still matches
      */
     @GET
     @Path("{databaseName}/{collectionName}/{documentId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getById(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName,
-            @PathParam("documentId") String documentId) {
-        try {
-            String document = dds.getById(databaseName, collectionName, documentId);
-            return Response.ok(document).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void getById(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @PathParam("documentId") final String documentId,
+            @Context final Request req,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String document = dds(parameters).getById(databaseName, collectionName, documentId);
+                    EntityTag tag = ResourceUtil.entityTag(document);
+                    Response.ResponseBuilder builder = req.evaluatePreconditions(tag);
+                    if (builder == null) {
+                        builder = Response.ok(document);
+                    }
+                    return builder.tag(tag).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the documents of the document identifiers contained within the
+     * body as a JSON array. The response holds the documents found, in the
+     * order they were requested, and the identifiers that matched no
+     * document.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentIds the document identifiers to query for
+     * @param asyncResponse resumed with the documents found and the identifiers not found
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/multiget")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void getByIds(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            final List<String> documentIds,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    DocumentBatch batch = dds(parameters).getByIds(databaseName, collectionName, documentIds);
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("{\"documents\":").append(ResourceUtil.createJsonArray(batch.getDocuments()));
+                    sb.append(", \"missing\":[");
+                    for (int i = 0; i < batch.getMissing().size(); i++) {
+                        if (i > 0) {
+                            sb.append(", ");
+                        }
+                        sb.append('"').append(batch.getMissing().get(i)).append('"');
+                    }
+                    sb.append("]}");
+                    return Response.ok(sb.toString()).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -156,53 +320,287 @@ public class DocumentResource {
      * @param content the JSON payload
      * @param overwrite specifies whether to overwrite the document if it
      * exists.
-     * @return the id of the document
+     * @param asyncResponse resumed with the id of the document
      */
     @POST
     @Path("document-upload")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addByForm(@FormParam("databaseName") String databaseName,
-            @FormParam("collectionName") String collectionName,
-            @FormParam("documentId") String documentId,
-            @FormParam("content") String content,
-            @FormParam("overwrite") boolean overwrite) {
-        try {
-            if (overwrite) {
-                boolean result = dds.replaceById(databaseName, collectionName, documentId, content);
-                return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-            } else {
-                String result = dds.add(databaseName, collectionName, content);
-                return Response.ok(ResourceUtil.buildJson("id", result)).build();
+    public void addByForm(@FormParam("databaseName") final String databaseName,
+            @FormParam("collectionName") final String collectionName,
+            @FormParam("documentId") final String documentId,
+            @FormParam("content") final String content,
+            @FormParam("overwrite") final boolean overwrite,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    if (overwrite) {
+                        boolean result = dds(parameters).replaceById(databaseName, collectionName, documentId, content);
+                        return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                    } else {
+                        String result = dds(parameters).add(databaseName, collectionName, content);
+                        return Response.ok(ResourceUtil.buildJson("id", result)).build();
+                    }
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException | NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
             }
-        } catch (DatasourceException | DeserializeException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (IllegalArgumentException | NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+        });
     }
 
     /**
      * Saves a document to the collection. If the specified database and
-     * collection do not exist they will be created.
+     * collection do not exist they will be created. With async=true the
+     * document is queued and inserted later in a batch with other queued
+     * documents, and 202 Accepted is returned right away; 429 Too Many
+     * Requests is returned while the queue of the collection is full.
+     * Asynchronous inserts are only accepted for the configured collections.
      *
      * @param databaseName the database
      * @param collectionName the collection
+     * @param async whether to queue the document instead of inserting it
+     * before responding
      * @param content the JSON payload
-     * @return the id of the document
+     * @param asyncResponse resumed with the id of the document
      */
     @POST
     @Path("{databaseName}/{collectionName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response add(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName, String content) {
-        try {
-            String result = dds.add(databaseName, collectionName, content);
-            return Response.ok(ResourceUtil.buildJson("id", result)).build();
-        } catch (DatasourceException | DeserializeException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (IllegalArgumentException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+    public void add(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("async") @DefaultValue("false") final boolean async,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    if (async) {
+                        String result = dds(parameters).enqueue(databaseName, collectionName, content);
+                        return Response.status(202).entity(ResourceUtil.buildJson("id", result)).build();
+                    }
+                    String result = dds(parameters).add(databaseName, collectionName, content);
+                    return Response.ok(ResourceUtil.buildJson("id", result)).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (QueueFullException ex) {
+                    return Response.status(429).header("Retry-After", "1")
+                            .entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves several documents to the collection, sent as a JSON array or as
+     * newline delimited JSON with one document per line. The documents are
+     * inserted in batches rather than one request per document. If the
+     * specified database and collection do not exist they will be created.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param ordered whether to stop at the first document that can't be
+     * inserted, defaults to {@code true}
+     * @param batchSize the number of documents per batch, the configured
+     * default if not given
+     * @param content the JSON array or newline delimited JSON payload
+     * @param asyncResponse resumed with the number of documents inserted, the ids of the documents in
+     * the order they were sent, {@code null} for those not inserted, and the
+     * errors of the rejected documents by position
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson", MediaType.TEXT_PLAIN})
+    @Produces(MediaType.APPLICATION_JSON)
+    public void addAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("ordered") @DefaultValue("true") final boolean ordered,
+            @QueryParam("batchSize") @DefaultValue("0") final int batchSize,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> contents = new ArrayList<>();
+                    JsonDocumentReader reader = new JsonDocumentReader(new StringReader(content == null ? "" : content));
+                    String document;
+                    while ((document = reader.next()) != null) {
+                        contents.add(document);
+                    }
+                    BulkInsertResult result = dds(parameters).addAll(databaseName, collectionName, contents, ordered, batchSize);
+                    return Response.ok(bulkResult(result)).build();
+                } catch (DatasourceException | DeserializeException | IOException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the JSON entity reporting the outcome of a bulk insert.
+     */
+    private static Map<String, Object> bulkResult(BulkInsertResult result) {
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("inserted", result.getInsertedCount());
+        entity.put("ids", result.getIds());
+        List<Map<String, Object>> errors = new ArrayList<>(result.getErrors().size());
+        for (Map.Entry<Integer, String> error : result.getErrors().entrySet()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("index", error.getKey());
+            item.put("error", error.getValue());
+            errors.add(item);
         }
+        entity.put("errors", errors);
+        return entity;
+    }
+
+    /**
+     * Imports the documents of a JSON array or newline delimited JSON body
+     * into the collection. The body is read as a stream and inserted in
+     * batches while it arrives, pausing whenever the maximum number of
+     * batches are waiting to be inserted, so bodies of any size are imported
+     * in bounded memory. Documents are inserted unordered. If the specified
+     * database and collection do not exist they will be created.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param batchSize the number of documents per batch, the configured
+     * default if not given
+     * @param maxInFlight the maximum number of batches waiting to be
+     * inserted, the configured maximum if not given
+     * @param body the JSON array or newline delimited JSON payload
+     * @param asyncResponse resumed with the number of documents read, inserted and rejected, the first
+     * rejections with their position and line, and the time taken. A 500
+     * status with the same counters is returned if the import ended early.
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/import")
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-ndjson", MediaType.TEXT_PLAIN})
+    @Produces(MediaType.APPLICATION_JSON)
+    public void importAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("batchSize") @DefaultValue("0") final int batchSize,
+            @QueryParam("maxInFlight") @DefaultValue("0") final int maxInFlight,
+            final InputStream body,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    JsonDocumentReader reader = new JsonDocumentReader(
+                            new InputStreamReader(body, StandardCharsets.UTF_8), JsonDocumentReader.MAX_DOCUMENT_LENGTH);
+                    ImportResult result = dds(parameters).importAll(databaseName, collectionName, reader, batchSize, maxInFlight);
+                    Map<String, Object> entity = new LinkedHashMap<>();
+                    entity.put("read", result.getRead());
+                    entity.put("inserted", result.getInserted());
+                    entity.put("rejected", result.getRejected());
+                    List<Map<String, Object>> rejections = new ArrayList<>(result.getRejections().size());
+                    for (ImportResult.Rejection rejection : result.getRejections()) {
+                        Map<String, Object> item = new LinkedHashMap<>();
+                        item.put("index", rejection.getIndex());
+                        item.put("line", rejection.getLine());
+                        item.put("error", rejection.getReason());
+                        rejections.add(item);
+                    }
+                    entity.put("rejections", rejections);
+                    entity.put("elapsedMillis", result.getElapsedMillis());
+                    if (result.getError() != null) {
+                        entity.put("error", result.getError());
+                        return Response.status(500).entity(entity).build();
+                    }
+                    return Response.ok(entity).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a JSON array of inserts, replacements, updates and deletes to
+     * the collection in a single bulk write. Each operation takes the form of
+     * the MongoDB shell, one of insertOne, replaceOne, updateOne, updateMany,
+     * deleteOne and deleteMany, for example
+     * {@code {"updateOne": {"filter": {"sku": "a1"}, "update": {"$inc": {"qty": 1}}, "upsert": true}}}.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param ordered whether to stop at the first failed operation, defaults
+     * to {@code true}
+     * @param content the JSON array of operations
+     * @param asyncResponse resumed with the totals of the write and, for each operation in the order
+     * sent, its status ("ok", "error" or "skipped"), the id of the document
+     * it inserted or upserted and the error if it failed, along with the
+     * write concern error if the write concern couldn't be satisfied
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/bulkwrite")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void bulkWrite(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @QueryParam("ordered") @DefaultValue("true") final boolean ordered,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> operations = new ArrayList<>();
+                    JsonDocumentReader reader = new JsonDocumentReader(new StringReader(content == null ? "" : content));
+                    String operation;
+                    while ((operation = reader.next()) != null) {
+                        operations.add(operation);
+                    }
+                    BulkWriteSummary summary = dds(parameters).bulkWrite(databaseName, collectionName, operations, ordered);
+                    Map<String, Object> entity = new LinkedHashMap<>();
+                    entity.put("acknowledged", summary.isAcknowledged());
+                    entity.put("inserted", summary.getInserted());
+                    entity.put("matched", summary.getMatched());
+                    entity.put("modified", summary.getModified());
+                    entity.put("deleted", summary.getDeleted());
+                    entity.put("upserted", summary.getUpserted());
+                    if (summary.getWriteConcernError() != null) {
+                        entity.put("writeConcernError", summary.getWriteConcernError());
+                    }
+                    List<Map<String, Object>> results = new ArrayList<>(summary.getOperations().size());
+                    for (int i = 0; i < summary.getOperations().size(); i++) {
+                        BulkWriteSummary.OperationResult result = summary.getOperations().get(i);
+                        Map<String, Object> item = new LinkedHashMap<>();
+                        item.put("index", i);
+                        item.put("type", result.getType());
+                        item.put("status", result.getStatus());
+                        if (result.getId() != null) {
+                            item.put("id", result.getId());
+                        }
+                        if (result.getError() != null) {
+                            item.put("error", result.getError());
+                        }
+                        results.add(item);
+                    }
+                    entity.put("operations", results);
+                    return Response.ok(entity).build();
+                } catch (DatasourceException | DeserializeException | IOException ex) {
+                    return Response.status(500).entity(Collections.singletonMap("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    // the message quotes the operation that was refused
+                    return Response.status(400).entity(Collections.singletonMap("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -214,23 +612,187 @@ public class DocumentResource {
      * @param collectionName the collection
      * @param documentId the document identifier
      * @param content the JSON payload
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @PUT
     @Path("{databaseName}/{collectionName}/{documentId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response replaceById(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName,
-            @PathParam("documentId") String documentId, String content) {
-        try {
-            boolean result = dds.replaceById(databaseName, collectionName, documentId, content);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException | DeserializeException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (IllegalArgumentException | NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void replaceById(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @PathParam("documentId") final String documentId, final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = dds(parameters).replaceById(databaseName, collectionName, documentId, content);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException | NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates part of a document in the collection with update operators
+     * such as "$set", "$unset", "$inc" and "$push", applied by the server, so
+     * only the changes are sent instead of the whole document.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentId the document identifier
+     * @param returnDocument whether to return the document as it is after
+     * the update
+     * @param content the JSON update document, for example
+     * {@code {"$set": {"status": "done"}, "$inc": {"attempts": 1}}}
+     * @param asyncResponse resumed with a status message with the outcome of the operation, or the
+     * updated document if requested
+     */
+    @PATCH
+    @Path("{databaseName}/{collectionName}/{documentId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void updateById(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @PathParam("documentId") final String documentId,
+            @QueryParam("returnDocument") final boolean returnDocument,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    if (returnDocument) {
+                        return Response.ok(dds(parameters).updateAndGetById(databaseName, collectionName, documentId, content)).build();
+                    }
+                    boolean result = dds(parameters).updateById(databaseName, collectionName, documentId, content);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Atomically adds to numeric fields of a document and returns their new
+     * values. Concurrent increments are applied one after the other by the
+     * server, so none is lost.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param documentId the document identifier
+     * @param upsert whether to create the document if it doesn't exist
+     * @param content the fields to increment and the amount to add to each,
+     * for example {@code {"hits": 1, "bytes": 512}}
+     * @param asyncResponse resumed with the new values of the incremented fields
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/{documentId}/increment")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void increment(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @PathParam("documentId") final String documentId,
+            @QueryParam("upsert") final boolean upsert,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    return Response.ok(dds(parameters).increment(databaseName, collectionName, documentId, content, upsert)).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Atomically finds a document and updates it. The body holds the
+     * "filter", "update", "sort", "projection", "upsert" and "returnDocument"
+     * ("before" or "after") of the request, for example
+     * {@code {"filter": {"state": "ready"}, "sort": {"priority": -1}, "update": {"$set": {"state": "taken"}}, "returnDocument": "after"}}.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param content the JSON request
+     * @param asyncResponse resumed with the document including its "_id", or {@code null} if it was
+     * upserted and the document before the update was asked for
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/findOneAndUpdate")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void findOneAndUpdate(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String document = dds(parameters).findOneAndUpdate(databaseName, collectionName, content);
+                    return Response.ok(document == null ? "null" : document).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
 
+    /**
+     * Atomically finds a document and deletes it. The body holds the
+     * optional "filter", "sort" and "projection" of the request.
+     *
+     * @param databaseName the database
+     * @param collectionName the collection
+     * @param content the JSON request
+     * @param asyncResponse resumed with the deleted document including its "_id"
+     */
+    @POST
+    @Path("{databaseName}/{collectionName}/findOneAndDelete")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void findOneAndDelete(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            final String content,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    return Response.ok(dds(parameters).findOneAndDelete(databaseName, collectionName, content)).build();
+                } catch (DatasourceException | DeserializeException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -239,22 +801,31 @@ public class DocumentResource {
      * @param databaseName the database
      * @param collectionName the collection
      * @param documentId the document identifier to delete
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}/{collectionName}/{documentId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeById(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName,
-            @PathParam("documentId") String documentId) {
-        try {
-            boolean result = dds.deleteById(databaseName, collectionName, documentId);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeById(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @PathParam("documentId") final String documentId,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = dds(parameters).deleteById(databaseName, collectionName, documentId);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -262,20 +833,29 @@ public class DocumentResource {
      *
      * @param databaseName the database
      * @param collectionName the collection
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}/{collectionName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeAll(@PathParam("databaseName") String databaseName,
-            @PathParam("collectionName") String collectionName) {
-        try {
-            boolean result = dds.deleteAll(databaseName, collectionName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("collectionName") final String collectionName,
+            @Suspended final AsyncResponse asyncResponse) {
+        final MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = dds(parameters).deleteAll(databaseName, collectionName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IllegalArgumentException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 }
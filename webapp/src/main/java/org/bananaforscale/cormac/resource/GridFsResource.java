@@ -16,23 +16,39 @@
 package org.bananaforscale.cormac.resource;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
 import org.bananaforscale.cormac.dao.gridfs.GridFsDataService;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.bananaforscale.cormac.dao.gridfs.ByteRange;
 import org.bananaforscale.cormac.dao.gridfs.FileEnvelope;
 import org.bananaforscale.cormac.exception.datasource.DatasourceException;
 import org.bananaforscale.cormac.exception.datasource.ExistsException;
@@ -51,32 +67,44 @@ import org.slf4j.LoggerFactory;
 public class GridFsResource {
 
     private static final Logger logger = LoggerFactory.getLogger(GridFsResource.class);
+    /**
+     * Requests for more ranges than this are answered with the whole file.
+     */
+    private static final int MAX_RANGES = 16;
     @Context
     HttpServletRequest request;
     GridFsDataService gds;
+    ResourceExecutor executor;
 
-    public GridFsResource(GridFsDataService gds) {
+    public GridFsResource(GridFsDataService gds, ResourceExecutor executor) {
         this.gds = gds;
+        this.executor = executor;
     }
 
     /**
      * Returns the names of all buckets in this database.
      *
      * @param databaseName the database
-     * @return the names of buckets in this database
+     * @param asyncResponse resumed with the names of buckets in this database
      */
     @GET
     @Path("{databaseName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getBuckets(@PathParam("databaseName") String databaseName) {
-        try {
-            List<String> bucketList = gds.getBuckets(databaseName);
-            return Response.ok(bucketList).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void getBuckets(@PathParam("databaseName") final String databaseName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> bucketList = gds.getBuckets(databaseName);
+                    return Response.ok(bucketList).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -84,21 +112,27 @@ public class GridFsResource {
      *
      * @param databaseName the database
      * @param bucketName the bucket
-     * @return a status message indicating the result of the operation
+     * @param asyncResponse resumed with a status message indicating the result of the operation
      */
     @POST
     @Path("{databaseName}/{bucketName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addBucket(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName) {
-        try {
-            boolean result = gds.addBucket(databaseName, bucketName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException | ExistsException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void addBucket(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = gds.addBucket(databaseName, bucketName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException | ExistsException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -106,21 +140,27 @@ public class GridFsResource {
      *
      * @param databaseName the database
      * @param bucketName the bucket
-     * @return a status message indicating the result of the operation
+     * @param asyncResponse resumed with a status message indicating the result of the operation
      */
     @DELETE
     @Path("{databaseName}/{bucketName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeBucket(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName) {
-        try {
-            boolean result = gds.removeBucket(databaseName, bucketName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeBucket(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = gds.removeBucket(databaseName, bucketName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -128,21 +168,27 @@ public class GridFsResource {
      *
      * @param databaseName the database
      * @param bucketName the bucket
-     * @return the files in the bucket
+     * @param asyncResponse resumed with the files in the bucket
      */
     @GET
     @Path("{databaseName}/{bucketName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAll(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName) {
-        try {
-            List<String> fileList = gds.getAll(databaseName, bucketName);
-            return Response.ok(ResourceUtil.createJsonArray(fileList)).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void getAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    List<String> fileList = gds.getAll(databaseName, bucketName);
+                    return Response.ok(ResourceUtil.createJsonArray(fileList)).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -150,21 +196,27 @@ public class GridFsResource {
      *
      * @param databaseName the database
      * @param bucketName the bucket
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}/{bucketName}/files")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeAll(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName) {
-        try {
-            boolean result = gds.removeAll(databaseName, bucketName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeAll(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = gds.removeAll(databaseName, bucketName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -179,48 +231,54 @@ public class GridFsResource {
      * existing document<br/>
      *
      * @param input
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @POST
     @Path("form-upload")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addByForm(MultipartFormDataInput input) {
-        Map<String, List<InputPart>> uploadForm = input.getFormDataMap();
-        List<InputPart> inputParts = uploadForm.get("inputFile");
-        String result = null;
-        for (InputPart inputPart : inputParts) {
-            try {
-                String databaseName = uploadForm.get("databaseName").get(0).getBodyAsString();
-                String bucketName = uploadForm.get("bucketName").get(0).getBodyAsString();
-                List<InputPart> checkbox = uploadForm.get("overwrite");
-                boolean overwrite = false;
-                if (checkbox != null) {
-                    overwrite = true;
-                }
-                MultivaluedMap<String, String> header = inputPart.getHeaders();
-                String fileName = ResourceUtil.getFileName(header);
-                if (databaseName == null || databaseName.isEmpty()) {
-                    logger.error("Could not save file without a database specified.");
-                    continue;
-                } else if (bucketName == null || bucketName.isEmpty()) {
-                    logger.error("Could not save file without a bucket specified.");
-                    continue;
-                } else if (fileName == null || fileName.isEmpty()) {
-                    logger.error("Could not save file without a filename.");
-                    continue;
+    public void addByForm(final MultipartFormDataInput input,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                Map<String, List<InputPart>> uploadForm = input.getFormDataMap();
+                List<InputPart> inputParts = uploadForm.get("inputFile");
+                String result = null;
+                for (InputPart inputPart : inputParts) {
+                    try {
+                        String databaseName = uploadForm.get("databaseName").get(0).getBodyAsString();
+                        String bucketName = uploadForm.get("bucketName").get(0).getBodyAsString();
+                        List<InputPart> checkbox = uploadForm.get("overwrite");
+                        boolean overwrite = false;
+                        if (checkbox != null) {
+                            overwrite = true;
+                        }
+                        MultivaluedMap<String, String> header = inputPart.getHeaders();
+                        String fileName = ResourceUtil.getFileName(header);
+                        if (databaseName == null || databaseName.isEmpty()) {
+                            logger.error("Could not save file without a database specified.");
+                            continue;
+                        } else if (bucketName == null || bucketName.isEmpty()) {
+                            logger.error("Could not save file without a bucket specified.");
+                            continue;
+                        } else if (fileName == null || fileName.isEmpty()) {
+                            logger.error("Could not save file without a filename.");
+                            continue;
+                        }
+                        InputStream inputStream = inputPart.getBody(InputStream.class, null);
+                        result = gds.addByForm(databaseName, bucketName, fileName, overwrite, inputStream);
+                    } catch (IOException | DatasourceException ex) {
+                        return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                    } catch (ExistsException ex) {
+                        return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                    } catch (NotFoundException ex) {
+                        return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                    }
                 }
-                InputStream inputStream = inputPart.getBody(InputStream.class, null);
-                result = gds.addByForm(databaseName, bucketName, fileName, overwrite, inputStream);
-            } catch (IOException | DatasourceException ex) {
-                return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-            } catch (ExistsException ex) {
-                return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-            } catch (NotFoundException ex) {
-                return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                return Response.ok(ResourceUtil.buildJson("id", result)).build();
             }
-        }
-        return Response.ok(ResourceUtil.buildJson("id", result)).build();
+        });
     }
 
     /**
@@ -232,26 +290,32 @@ public class GridFsResource {
      * @param bucketName the bucket
      * @param fileName the file name
      * @param inputStream the binary payload
-     * @return a JSON document with the ID of the file
+     * @param asyncResponse resumed with a JSON document with the ID of the file
      */
     @POST
     @Path("{databaseName}/{bucketName}/{fileName}")
     @Consumes(MediaType.WILDCARD)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response addByFileName(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName,
-            @PathParam("fileName") String fileName,
-            InputStream inputStream) {
-        try {
-            String result = gds.addByFileName(databaseName, bucketName, fileName, inputStream);
-            return Response.ok(ResourceUtil.buildJson("id", result)).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (ExistsException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void addByFileName(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @PathParam("fileName") final String fileName,
+            final InputStream inputStream,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String result = gds.addByFileName(databaseName, bucketName, fileName, inputStream);
+                    return Response.ok(ResourceUtil.buildJson("id", result)).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (ExistsException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -262,24 +326,30 @@ public class GridFsResource {
      * @param bucketName the bucket
      * @param fileName the file name
      * @param inputStream the binary payload
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @PUT
     @Path("{databaseName}/{bucketName}/{fileName}")
     @Consumes(MediaType.WILDCARD)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response updateByFileName(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName,
-            @PathParam("fileName") String fileName,
-            InputStream inputStream) {
-        try {
-            String result = gds.updateByFileName(databaseName, bucketName, fileName, inputStream);
-            return Response.ok(ResourceUtil.buildJson("id", result)).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void updateByFileName(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @PathParam("fileName") final String fileName,
+            final InputStream inputStream,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeUntimed(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    String result = gds.updateByFileName(databaseName, bucketName, fileName, inputStream);
+                    return Response.ok(ResourceUtil.buildJson("id", result)).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 
     /**
@@ -288,28 +358,143 @@ public class GridFsResource {
      * @param databaseName the database
      * @param bucketName the bucket
      * @param fileName the file name
-     * @return the file in with the given file name
+     * @param range the byte ranges requested, if any
+     * @param ifRange the entity tag or date the ranges are conditional on
+     * @param req the request, used to evaluate preconditions
+     * @param asyncResponse resumed with the file in with the given file name, or 304 Not Modified if
+     * the client holds the current version. The entity tag is the MD5
+     * checksum GridFS stored with the file. Byte ranges are answered with
+     * 206 Partial Content, using a multipart/byteranges body for more than
+     * one range, or with 416 if none of the ranges lies within the file.
      */
     @GET
     @Path("{databaseName}/{bucketName}/{fileName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getByFileName(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName,
-            @PathParam("fileName") String fileName) {
+    public void getByFileName(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @PathParam("fileName") final String fileName,
+            @HeaderParam("Range") final String range,
+            @HeaderParam("If-Range") final String ifRange,
+            @Context final Request req,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    FileEnvelope envelope = gds.getByFileName(databaseName, bucketName, fileName);
+                    EntityTag tag = envelope.getMd5() == null ? null : new EntityTag(envelope.getMd5());
+                    Response.ResponseBuilder builder = null;
+                    if (tag != null && envelope.getUploadDate() != null) {
+                        builder = req.evaluatePreconditions(envelope.getUploadDate(), tag);
+                    } else if (tag != null) {
+                        builder = req.evaluatePreconditions(tag);
+                    }
+                    if (builder != null) {
+                        envelope.close();
+                        return builder.tag(tag).lastModified(envelope.getUploadDate()).build();
+                    }
+                    List<ByteRange> ranges = null;
+                    if (range != null && ifRangeMatches(ifRange, tag, envelope.getUploadDate())) {
+                        ranges = ByteRange.parse(range, envelope.getLength());
+                    }
+                    if (ranges != null && ranges.isEmpty()) {
+                        envelope.close();
+                        return Response.status(416).header("Content-Range", "bytes */" + envelope.getLength()).build();
+                    }
+                    if (ranges != null && ranges.size() <= MAX_RANGES) {
+                        envelope.close();
+                        return getRanges(databaseName, bucketName, envelope, ranges)
+                                .tag(tag).lastModified(envelope.getUploadDate()).header("Accept-Ranges", "bytes").build();
+                    }
+                    builder = Response.ok(ResourceUtil.streamInput(envelope.getInputStream()), envelope.getContentType());
+                    builder.tag(tag).lastModified(envelope.getUploadDate());
+                    builder.header("Content-Length", envelope.getLength());
+                    builder.header("Accept-Ranges", "bytes");
+                    // Content Disposition attachment prompts the save dialog box.
+                    // builder.header("Content-Disposition", "attachment;filename=" + fileName);
+                    // Content Disposition inline will try to open the file in the browser.
+                    builder.header("Content-Disposition", "inline;filename=" + envelope.getName());
+                    return builder.build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (IOException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the 206 Partial Content response for the requested ranges. A
+     * single range is sent as is, several ranges as the parts of a
+     * multipart/byteranges body. Each range is read lazily from the chunks
+     * overlapping it while the response is written.
+     */
+    private Response.ResponseBuilder getRanges(final String databaseName, final String bucketName,
+            final FileEnvelope envelope, final List<ByteRange> ranges) throws DatasourceException {
+        if (ranges.size() == 1) {
+            ByteRange single = ranges.get(0);
+            return Response.status(206)
+                    .entity(ResourceUtil.streamInput(gds.getRange(databaseName, bucketName, envelope, single)))
+                    .type(envelope.getContentType())
+                    .header("Content-Range", single.toContentRange(envelope.getLength()))
+                    .header("Content-Length", single.getLength());
+        }
+        final String boundary = UUID.randomUUID().toString();
+        StreamingOutput body = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                for (ByteRange part : ranges) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("\r\n--").append(boundary).append("\r\n");
+                    if (envelope.getContentType() != null) {
+                        sb.append("Content-Type: ").append(envelope.getContentType()).append("\r\n");
+                    }
+                    sb.append("Content-Range: ").append(part.toContentRange(envelope.getLength())).append("\r\n\r\n");
+                    output.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+                    InputStream input;
+                    try {
+                        input = gds.getRange(databaseName, bucketName, envelope, part);
+                    } catch (DatasourceException ex) {
+                        throw new IOException(ex.getMessage(), ex);
+                    }
+                    try {
+                        ResourceUtil.copy(input, output);
+                    } finally {
+                        input.close();
+                    }
+                }
+                output.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+            }
+        };
+        return Response.status(206).entity(body).type("multipart/byteranges; boundary=" + boundary);
+    }
+
+    /**
+     * Determines whether the ranges of a request apply. An If-Range entity
+     * tag must match the current one exactly, an If-Range date must equal
+     * the upload date of the file. Otherwise the whole file is sent.
+     */
+    private static boolean ifRangeMatches(String ifRange, EntityTag tag, Date lastModified) {
+        if (ifRange == null || ifRange.trim().isEmpty()) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return tag != null && value.equals("\"" + tag.getValue() + "\"");
+        }
+        if (lastModified == null) {
+            return false;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
         try {
-            FileEnvelope envelope = gds.getByFileName(databaseName, bucketName, fileName);
-            Response.ResponseBuilder builder = Response.ok(envelope.getBytes(), envelope.getContentType());
-            // Content Disposition attachment prompts the save dialog box.
-            // builder.header("Content-Disposition", "attachment;filename=" + fileName);
-            // Content Disposition inline will try to open the file in the browser.
-            builder.header("Content-Disposition", "inline;filename=" + envelope.getName());
-            return builder.build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (IOException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(404).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+            return format.parse(value).getTime() / 1000 == lastModified.getTime() / 1000;
+        } catch (ParseException ex) {
+            return false;
         }
     }
 
@@ -319,21 +504,27 @@ public class GridFsResource {
      * @param databaseName the database
      * @param bucketName the bucket
      * @param fileName the file to delete
-     * @return a status message with the outcome of the operation
+     * @param asyncResponse resumed with a status message with the outcome of the operation
      */
     @DELETE
     @Path("{databaseName}/{bucketName}/{fileName}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response removeByFileName(@PathParam("databaseName") String databaseName,
-            @PathParam("bucketName") String bucketName,
-            @PathParam("fileName") String fileName) {
-        try {
-            boolean result = gds.removeByFileName(databaseName, bucketName, fileName);
-            return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
-        } catch (DatasourceException ex) {
-            return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        } catch (NotFoundException ex) {
-            return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
-        }
+    public void removeByFileName(@PathParam("databaseName") final String databaseName,
+            @PathParam("bucketName") final String bucketName,
+            @PathParam("fileName") final String fileName,
+            @Suspended final AsyncResponse asyncResponse) {
+        executor.executeWrite(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                try {
+                    boolean result = gds.removeByFileName(databaseName, bucketName, fileName);
+                    return Response.ok(ResourceUtil.buildJson("ok", String.valueOf(result))).build();
+                } catch (DatasourceException ex) {
+                    return Response.status(500).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                } catch (NotFoundException ex) {
+                    return Response.status(400).entity(ResourceUtil.buildJson("error", ex.getMessage())).build();
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.resource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.bananaforscale.cormac.Readiness;
+
+/**
+ * Resource answering the liveness and readiness probes of load balancers and orchestrators.
+ */
+@Path("health")
+public class HealthResource {
+
+    private final Readiness readiness;
+
+    /**
+     * @param readiness the startup state of the application
+     */
+    public HealthResource(Readiness readiness) {
+        this.readiness = readiness;
+    }
+
+    /**
+     * Tells that the application is running, whether or not it can reach
+     * MongoDB, so that an application waiting for it isn't restarted.
+     *
+     * @return 200 OK
+     */
+    @GET
+    @Path("live")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response live() {
+        return Response.ok(ResourceUtil.buildJson("status", "up")).build();
+    }
+
+    /**
+     * Tells whether the application is ready to take traffic.
+     *
+     * @return 200 OK once ready, otherwise 503 Service Unavailable with the
+     * stage of the startup and the reason of the last failed connection
+     * attempt
+     */
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ready() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", readiness.getState().name().toLowerCase());
+        status.put("connectAttempts", readiness.getConnectAttempts());
+        if (readiness.isReady()) {
+            status.put("startupMillis", readiness.getStartupMillis());
+            if (readiness.getWarmUpMillis() >= 0) {
+                status.put("warmUpMillis", readiness.getWarmUpMillis());
+            }
+            return Response.ok(status).build();
+        }
+        if (readiness.getLastError() != null) {
+            status.put("error", readiness.getLastError());
+        }
+        return Response.status(503).entity(status).build();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.resource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.bananaforscale.cormac.Readiness;
+import org.bananaforscale.cormac.dao.DocumentCache;
+import org.bananaforscale.cormac.dao.NamespaceCache;
+import org.bananaforscale.cormac.dao.document.IngestQueue;
+
+/**
+ * Resource exposing runtime statistics of the web application.
+ */
+@Path("metrics")
+public class MetricsResource {
+
+    /**
+     * The statistics the MongoDB driver registers in JMX for each connection pool.
+     */
+    private static final String[] POOL_ATTRIBUTES = {
+        "Host", "Port", "MinSize", "MaxSize", "Size", "CheckedOutCount", "WaitQueueSize"};
+
+    private final NamespaceCache namespaceCache;
+    private final DocumentCache documentCache;
+    private final IngestQueue ingestQueue;
+    private final Readiness readiness;
+    private final ResourceExecutor resourceExecutor;
+
+    /**
+     * @param namespaceCache the cache of database and collection names
+     * @param documentCache the document cache, or {@code null} if documents aren't cached
+     * @param ingestQueue the queue of asynchronous inserts, or {@code null} if disabled
+     * @param readiness the startup state of the application
+     * @param resourceExecutor the executor running the operations of the resources
+     */
+    public MetricsResource(NamespaceCache namespaceCache, DocumentCache documentCache, IngestQueue ingestQueue,
+            Readiness readiness, ResourceExecutor resourceExecutor) {
+        this.namespaceCache = namespaceCache;
+        this.documentCache = documentCache;
+        this.ingestQueue = ingestQueue;
+        this.readiness = readiness;
+        this.resourceExecutor = resourceExecutor;
+    }
+
+    /**
+     * Returns the statistics of the startup, of the caches, of the queue of asynchronous inserts,
+     * of the executor of the resources and of the connection pools.
+     *
+     * @return the statistics as a JSON document
+     */
+    @GET
+    @Path("")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAll() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<String, Object> startup = new LinkedHashMap<>();
+        startup.put("state", readiness.getState().name().toLowerCase());
+        startup.put("startupMillis", readiness.getStartupMillis());
+        startup.put("warmUpMillis", readiness.getWarmUpMillis());
+        startup.put("coldLatencyMillis", readiness.getColdLatencyMillis());
+        startup.put("warmLatencyMillis", readiness.getWarmLatencyMillis());
+        metrics.put("startup", startup);
+        Map<String, Object> namespaces = new LinkedHashMap<>();
+        namespaces.put("enabled", namespaceCache.isEnabled());
+        namespaces.put("hits", namespaceCache.getHitCount());
+        namespaces.put("misses", namespaceCache.getMissCount());
+        metrics.put("namespaceCache", namespaces);
+        Map<String, Object> documents = new LinkedHashMap<>();
+        documents.put("enabled", documentCache != null);
+        if (documentCache != null) {
+            documents.put("hits", documentCache.getHitCount());
+            documents.put("misses", documentCache.getMissCount());
+            documents.put("hitRatio", documentCache.getHitRatio());
+            documents.put("evictions", documentCache.getEvictionCount());
+            documents.put("entries", documentCache.getEntryCount());
+            documents.put("sizeBytes", documentCache.getSizeBytes());
+            documents.put("maxBytes", documentCache.getMaxBytes());
+        }
+        metrics.put("documentCache", documents);
+        Map<String, Object> ingest = new LinkedHashMap<>();
+        ingest.put("enabled", ingestQueue != null);
+        if (ingestQueue != null) {
+            ingest.put("depth", ingestQueue.getDepth());
+            ingest.put("capacityPerCollection", ingestQueue.getCapacity());
+            ingest.put("accepted", ingestQueue.getAcceptedCount());
+            ingest.put("rejected", ingestQueue.getRejectedCount());
+            ingest.put("inserted", ingestQueue.getInsertedCount());
+            ingest.put("failed", ingestQueue.getFailedCount());
+            ingest.put("flushes", ingestQueue.getFlushCount());
+            ingest.put("averageFlushMillis", ingestQueue.getAverageFlushMillis());
+            ingest.put("maxFlushMillis", ingestQueue.getMaxFlushMillis());
+        }
+        metrics.put("ingestQueue", ingest);
+        Map<String, Object> executor = new LinkedHashMap<>();
+        executor.put("enabled", resourceExecutor.isEnabled());
+        executor.put("maxInFlight", resourceExecutor.getMaxInFlight());
+        executor.put("active", resourceExecutor.getActiveCount());
+        executor.put("queued", resourceExecutor.getQueuedCount());
+        executor.put("rejected", resourceExecutor.getRejectedCount());
+        executor.put("timedOut", resourceExecutor.getTimedOutCount());
+        metrics.put("resourceExecutor", executor);
+        metrics.put("connectionPools", getConnectionPools());
+        return Response.ok(metrics).build();
+    }
+
+    /**
+     * Reads the size, checked out connections and waiting threads of each connection pool from
+     * the MBeans of the MongoDB driver.
+     */
+    private List<Map<String, Object>> getConnectionPools() {
+        List<Map<String, Object>> pools = new ArrayList<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName("org.mongodb.driver:type=ConnectionPool,*"), null)) {
+                Map<String, Object> pool = new LinkedHashMap<>();
+                for (String attribute : POOL_ATTRIBUTES) {
+                    pool.put(Character.toLowerCase(attribute.charAt(0)) + attribute.substring(1),
+                            server.getAttribute(name, attribute));
+                }
+                pools.add(pool);
+            }
+        } catch (JMException ex) {
+            // the statistics are optional, report the pools read so far
+        }
+        return pools;
+    }
+}
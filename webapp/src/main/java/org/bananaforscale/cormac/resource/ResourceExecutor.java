@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the operations of the resources and resumes their suspended responses. With an executor,
+ * the container thread is released as soon as an operation is handed over, so slow datasource
+ * calls hold a thread of the bounded executor rather than one of the container. Operations that
+ * don't fit in the queue of the executor are answered with 503 Service Unavailable, and responses
+ * that take longer than the timeout are answered with 504 Gateway Timeout. Reads are cancelled
+ * when they time out, while writes, which may already be applied, are left to complete. Bulk
+ * writes and imports, whose duration grows with the size of the body, are not timed out. Without
+ * an executor operations run on the container thread as before.
+ * <p>
+ * With an executor starting a virtual thread per operation, the number of operations in flight
+ * is bounded by a semaphore instead of by a number of threads; operations beyond the limit are
+ * answered with 503 as well.
+ */
+public class ResourceExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceExecutor.class);
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final long timeoutMillis;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * @param executor the executor running the operations, or {@code null} to run them on the
+     * container thread
+     * @param maxInFlight the maximum number of operations handed to the executor and not yet
+     * completed, 0 to leave the bound to the executor
+     * @param timeoutMillis the time in milliseconds after which a response is given up, 0 for no
+     * timeout
+     */
+    public ResourceExecutor(ExecutorService executor, int maxInFlight, long timeoutMillis) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = executor != null && maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs a read and resumes the response with its outcome. The read is cancelled if it times
+     * out.
+     *
+     * @param asyncResponse the suspended response
+     * @param operation the operation building the response
+     */
+    public void execute(final AsyncResponse asyncResponse, final Callable<Response> operation) {
+        execute(asyncResponse, operation, true, true);
+    }
+
+    /**
+     * Runs a write and resumes the response with its outcome. The write is left to complete if
+     * the response times out, as it may already be applied.
+     *
+     * @param asyncResponse the suspended response
+     * @param operation the operation building the response
+     */
+    public void executeWrite(final AsyncResponse asyncResponse, final Callable<Response> operation) {
+        execute(asyncResponse, operation, true, false);
+    }
+
+    /**
+     * Runs a write whose duration depends on the size of the request, such as a bulk insert or
+     * an import, and resumes the response with its outcome without a timeout.
+     *
+     * @param asyncResponse the suspended response
+     * @param operation the operation building the response
+     */
+    public void executeUntimed(final AsyncResponse asyncResponse, final Callable<Response> operation) {
+        execute(asyncResponse, operation, false, false);
+    }
+
+    private void execute(final AsyncResponse asyncResponse, final Callable<Response> operation,
+            final boolean timed, final boolean interruptible) {
+        if (executor == null) {
+            resume(asyncResponse, operation);
+            return;
+        }
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            reject(asyncResponse);
+            return;
+        }
+        final AtomicReference<Future<?>> future = new AtomicReference<>();
+        if (timed && timeoutMillis > 0) {
+            asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+                @Override
+                public void handleTimeout(AsyncResponse response) {
+                    timedOut.incrementAndGet();
+                    response.resume(Response.status(504)
+                            .entity(ResourceUtil.buildJson("error", "The operation timed out")).build());
+                    Future<?> running = future.get();
+                    if (running != null && interruptible) {
+                        running.cancel(true);
+                    }
+                }
+            });
+            asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            future.set(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resume(asyncResponse, operation);
+                    } finally {
+                        if (inFlight != null) {
+                            inFlight.release();
+                        }
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            if (inFlight != null) {
+                inFlight.release();
+            }
+            reject(asyncResponse);
+        }
+    }
+
+    /**
+     * @return {@code true} if operations run on the executor, otherwise {@code false}
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * @return the maximum number of operations in flight, 0 if the executor bounds them
+     */
+    public int getMaxInFlight() {
+        return inFlight == null ? 0 : maxInFlight;
+    }
+
+    /**
+     * @return the number of operations running
+     */
+    public int getActiveCount() {
+        if (inFlight != null) {
+            return maxInFlight - inFlight.availablePermits();
+        }
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount() : 0;
+    }
+
+    /**
+     * @return the number of operations waiting for a thread
+     */
+    public int getQueuedCount() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    /**
+     * @return the number of operations turned away because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of responses given up after the timeout
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    private void reject(AsyncResponse asyncResponse) {
+        rejected.incrementAndGet();
+        asyncResponse.resume(Response.status(503).header("Retry-After", "1")
+                .entity(ResourceUtil.buildJson("error", "The server is busy, retry later")).build());
+    }
+
+    /**
+     * Resumes the response with the outcome of an operation. If the response was already given
+     * up, a streaming entity holding a cursor or a file is closed as it will never be written.
+     */
+    private static void resume(AsyncResponse asyncResponse, Callable<Response> operation) {
+        try {
+            Response response = operation.call();
+            if (!asyncResponse.resume(response) && response.getEntity() instanceof Closeable) {
+                try {
+                    ((Closeable) response.getEntity()).close();
+                } catch (IOException ex) {
+                    logger.warn("An error occured while discarding the response", ex);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("An error occured while handling the request", ex);
+            asyncResponse.resume(ex);
+        }
+    }
+}
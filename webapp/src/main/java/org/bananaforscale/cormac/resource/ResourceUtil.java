@@ -15,8 +15,22 @@
  */
 package org.bananaforscale.cormac.resource;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import org.bananaforscale.cormac.dao.ConcernOptions;
+import org.bananaforscale.cormac.dao.document.DocumentCursor;
 
 /**
  *
@@ -24,8 +38,22 @@ import javax.ws.rs.core.MultivaluedMap;
  */
 public class ResourceUtil {
 
+    /**
+     * The size of the buffer used to copy file content to a response.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A streaming entity holding a cursor or a stream, which is closed once
+     * the entity is written, or by {@link #close()} if it never is.
+     */
+    protected abstract static class ClosingOutput implements StreamingOutput, Closeable {
+    }
+
     /**
      * Builds a simple JSON document to be used as content for a HTTP Response.
+     * The value is escaped, as it may hold messages of the server or text of
+     * the request.
      *
      * @param key
      * @param value
@@ -33,10 +61,28 @@ public class ResourceUtil {
      */
     protected static String buildJson(String key, String value) {
         StringBuilder sb = new StringBuilder();
-        sb.append("{\"").append(key).append("\":\"").append(value).append("\"}");
+        sb.append("{\"").append(key).append("\":\"");
+        appendEscaped(sb, String.valueOf(value));
+        sb.append("\"}");
         return sb.toString();
     }
 
+    /**
+     * Appends a string escaped for use within a JSON string literal.
+     */
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
     /**
      * Takes in a list of JSON Objects represented as strings and creates a
      * string representation of a JSON Array .
@@ -57,6 +103,126 @@ public class ResourceUtil {
         return sb.toString();
     }
 
+    /**
+     * Builds a strong entity tag from the MD5 hash of a response body, so
+     * that clients can revalidate a representation they already hold.
+     *
+     * @param content the response body
+     * @return the entity tag
+     */
+    protected static EntityTag entityTag(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new EntityTag(sb.toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+    }
+
+    /**
+     * Creates a {@link StreamingOutput} writing the documents of a cursor as a
+     * JSON Array directly to the response. Only one document is held in
+     * memory at a time. The cursor is closed once the output is written.
+     *
+     * @param cursor the cursor over the JSON documents
+     * @return the streaming entity
+     */
+    protected static StreamingOutput streamJsonArray(final DocumentCursor cursor) {
+        return new ClosingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                try {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    writer.write("[");
+                    boolean first = true;
+                    while (cursor.hasNext()) {
+                        if (!first) {
+                            writer.write(", ");
+                        }
+                        cursor.writeNext(writer);
+                        first = false;
+                    }
+                    writer.write("]");
+                    writer.flush();
+                } catch (RuntimeException ex) {
+                    throw new IOException("An error occured while streaming the document list", ex);
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a {@link StreamingOutput} copying the content of a file, or of
+     * a range of it, to the response. The input is closed once the output is
+     * written.
+     *
+     * @param input the file content
+     * @return the streaming entity
+     */
+    protected static StreamingOutput streamInput(final InputStream input) {
+        return new ClosingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                try {
+                    copy(input, output);
+                    output.flush();
+                } finally {
+                    input.close();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+        };
+    }
+
+    /**
+     * Copies a stream through a fixed size buffer, so memory use doesn't
+     * depend on the size of the content.
+     *
+     * @param input the stream to read
+     * @param output the stream to write
+     * @throws IOException if either stream fails
+     */
+    protected static void copy(InputStream input, OutputStream output) throws IOException {
+        try {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("An error occured while streaming the file", ex);
+        }
+    }
+
+    /**
+     * Reads the write concern and read preference of a request from its
+     * "w", "j", "wtimeout" and "readPreference" query parameters.
+     *
+     * @param parameters the query parameters of the request
+     * @return the options, empty if none of the parameters is given
+     * @throws IllegalArgumentException if one of the parameters is invalid
+     */
+    protected static ConcernOptions concernOptions(MultivaluedMap<String, String> parameters) {
+        return ConcernOptions.parse(parameters.getFirst("w"), parameters.getFirst("j"),
+                parameters.getFirst("wtimeout"), parameters.getFirst("readPreference"));
+    }
+
     /**
      * header sample { Content-Type=[image/png], Content-Disposition=[form-data;
      * name="file"; filename="filename.extension"] }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 bananaforscale.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bananaforscale.cormac.resource;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bananaforscale.cormac.dao.document.DocumentDataService;
+import org.bananaforscale.cormac.exception.datasource.DatasourceException;
+import org.bananaforscale.cormac.exception.datasource.NotFoundException;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up the application before it takes traffic. The minimum number of pool connections are
+ * opened up front, then the read and serialization paths used by the resources are run a number
+ * of times so that they are compiled by the JIT before the first real requests arrive. The time
+ * taken by the first and the last iterations tells how much the warm-up helped.
+ */
+public class WarmUp {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    /**
+     * The number of documents read by each iteration.
+     */
+    private static final int SAMPLE_SIZE = 100;
+    /**
+     * The number of final iterations whose average time is reported as the warm latency.
+     */
+    private static final int WARM_WINDOW = 10;
+    private static final String SYNTHETIC_DOCUMENT = "{\"name\": \"warm-up\", \"count\": 42, \"ratio\": 0.5,"
+            + " \"active\": true, \"tags\": [\"a\", \"b\", \"c\"], \"nested\": {\"created\": {\"$date\": 0}}}";
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final MongoClient mongoClient;
+    private final DocumentDataService dds;
+    private final int connections;
+    private final String databaseName;
+    private final String collectionName;
+    private final int iterations;
+    private long durationMillis;
+    private double coldMillis;
+    private double warmMillis;
+
+    /**
+     * @param mongoClient the client whose pool is filled
+     * @param dds the data service whose reads are warmed up
+     * @param connections the number of connections to open
+     * @param namespace the collection read, as database.collection, or {@code null} to only warm
+     * up the serialization of synthetic documents
+     * @param iterations the number of times the read and serialization paths are run
+     */
+    public WarmUp(MongoClient mongoClient, DocumentDataService dds, int connections, String namespace, int iterations) {
+        this.mongoClient = mongoClient;
+        this.dds = dds;
+        this.connections = connections;
+        int dot = namespace == null ? -1 : namespace.indexOf('.');
+        this.databaseName = dot > 0 ? namespace.substring(0, dot) : null;
+        this.collectionName = dot > 0 ? namespace.substring(dot + 1) : null;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Runs the warm-up. Failures are logged and end the warm-up early
+     * rather than holding the application back.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        openConnections();
+        long warmTotal = 0;
+        int warmCount = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                long iterationStart = System.nanoTime();
+                exercise();
+                long elapsed = System.nanoTime() - iterationStart;
+                if (i == 0) {
+                    coldMillis = elapsed / 1000000.0;
+                }
+                if (i >= iterations - WARM_WINDOW) {
+                    warmTotal += elapsed;
+                    warmCount++;
+                }
+            }
+        } catch (DatasourceException | NotFoundException | IOException | RuntimeException ex) {
+            logger.warn("The warm-up ended early: " + ex.getMessage());
+        }
+        warmMillis = warmCount == 0 ? 0 : warmTotal / (warmCount * 1000000.0);
+        durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the time in milliseconds taken by the warm-up
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the time in milliseconds taken by the first iteration
+     */
+    public double getColdMillis() {
+        return coldMillis;
+    }
+
+    /**
+     * @return the average time in milliseconds taken by the last iterations
+     */
+    public double getWarmMillis() {
+        return warmMillis;
+    }
+
+    /**
+     * Opens connections by running as many pings at the same time. The
+     * driver keeps the pool at its minimum size from then on.
+     */
+    private void openConnections() {
+        if (connections <= 0) {
+            return;
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            mongoClient.getDatabase("admin").runCommand(new Document("ping", 1));
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        } catch (MongoException ex) {
+                            logger.warn("A warm-up connection could not be opened: " + ex.getMessage());
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the read and serialization paths of the document resource once.
+     */
+    private void exercise() throws DatasourceException, NotFoundException, IOException {
+        List<String> documents = new ArrayList<>(SAMPLE_SIZE);
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            documents.add(Document.parse(SYNTHETIC_DOCUMENT).toJson());
+        }
+        ResourceUtil.entityTag(ResourceUtil.createJsonArray(documents));
+        if (databaseName != null) {
+            String limit = String.valueOf(SAMPLE_SIZE);
+            ResourceUtil.streamJsonArray(dds.openAll(databaseName, collectionName, null, null, "0", limit, null, true))
+                    .write(DISCARD);
+            for (String document : dds.getAll(databaseName, collectionName, null, null, "0", "1", null, true)) {
+                ResourceUtil.entityTag(document);
+            }
+        }
+    }
+}